@@ -0,0 +1,152 @@
+package com.tianji.api.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.tianji.api.client.user.UserClient;
+import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户信息缓存，缓存未命中的用户合并为一次批量查询，
+ * 并发请求中正在查询的用户不会重复查询，而是等待同一个查询结果
+ */
+@RequiredArgsConstructor
+public class UserCache {
+
+    private final Cache<Long, UserDTO> userCaches;
+    private final UserClient userClient;
+    /**
+     * 正在查询中的用户
+     */
+    private final Map<Long, CompletableFuture<UserDTO>> loadings = new ConcurrentHashMap<>();
+
+    public UserDTO queryUserById(Long id) {
+        if (id == null) {
+            return null;
+        }
+        List<UserDTO> list = queryUserByIds(List.of(id));
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    public Map<Long, UserDTO> queryUserMap(Iterable<Long> ids) {
+        List<UserDTO> list = queryUserByIds(ids);
+        Map<Long, UserDTO> map = new HashMap<>(list.size());
+        for (UserDTO u : list) {
+            map.put(u.getId(), u);
+        }
+        return map;
+    }
+
+    /**
+     * 根据id批量查询用户信息，与UserClient#queryUserByIds用法一致，不存在的用户不返回
+     *
+     * @param ids 用户id集合
+     * @return 用户集合，按ids的顺序排列，已去重
+     */
+    public List<UserDTO> queryUserByIds(Iterable<Long> ids) {
+        if (ids == null) {
+            return CollUtils.emptyList();
+        }
+        // 1.查询本地缓存，记录未命中的用户
+        Map<Long, UserDTO> found = new LinkedHashMap<>();
+        Map<Long, CompletableFuture<UserDTO>> waitings = new HashMap<>();
+        Map<Long, CompletableFuture<UserDTO>> owned = new HashMap<>();
+        for (Long id : ids) {
+            if (id == null || found.containsKey(id) || waitings.containsKey(id)) {
+                continue;
+            }
+            UserDTO u = userCaches.getIfPresent(id);
+            if (u != null) {
+                found.put(id, u);
+                continue;
+            }
+            // 2.未命中，如果其它请求正在查询该用户，等待其结果，否则由当前请求负责查询
+            CompletableFuture<UserDTO> future = new CompletableFuture<>();
+            CompletableFuture<UserDTO> existing = loadings.putIfAbsent(id, future);
+            if (existing == null) {
+                owned.put(id, future);
+                existing = future;
+            }
+            found.put(id, null);
+            waitings.put(id, existing);
+        }
+        if (waitings.isEmpty()) {
+            return new ArrayList<>(found.values());
+        }
+        // 3.一次批量查询当前请求负责的用户
+        if (!owned.isEmpty()) {
+            load(owned);
+        }
+        // 4.汇总结果
+        List<UserDTO> list = new ArrayList<>(found.size());
+        for (Map.Entry<Long, UserDTO> e : found.entrySet()) {
+            UserDTO u = e.getValue();
+            if (u == null) {
+                u = join(waitings.get(e.getKey()));
+            }
+            if (u != null) {
+                list.add(u);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 用户信息变更后清理缓存，正在查询中的旧数据也不会再写入缓存
+     *
+     * @param ids 用户id集合
+     */
+    public void invalidate(Collection<Long> ids) {
+        if (CollUtils.isEmpty(ids)) {
+            return;
+        }
+        for (Long id : ids) {
+            loadings.remove(id);
+        }
+        userCaches.invalidateAll(ids);
+    }
+
+    private void load(Map<Long, CompletableFuture<UserDTO>> owned) {
+        List<UserDTO> users;
+        try {
+            users = userClient.queryUserByIds(owned.keySet());
+        } catch (RuntimeException e) {
+            // 查询失败，通知等待的请求
+            for (Map.Entry<Long, CompletableFuture<UserDTO>> en : owned.entrySet()) {
+                loadings.remove(en.getKey(), en.getValue());
+                en.getValue().completeExceptionally(e);
+            }
+            throw e;
+        }
+        Map<Long, UserDTO> map = new HashMap<>(users == null ? 0 : users.size());
+        if (users != null) {
+            for (UserDTO u : users) {
+                map.put(u.getId(), u);
+            }
+        }
+        for (Map.Entry<Long, CompletableFuture<UserDTO>> en : owned.entrySet()) {
+            UserDTO u = map.get(en.getKey());
+            // 只有查询期间没有被清理过，才写入缓存，不存在的用户不缓存
+            if (loadings.remove(en.getKey(), en.getValue()) && u != null) {
+                userCaches.put(en.getKey(), u);
+            }
+            en.getValue().complete(u);
+        }
+    }
+
+    private UserDTO join(CompletableFuture<UserDTO> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
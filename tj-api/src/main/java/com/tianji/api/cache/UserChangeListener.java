@@ -0,0 +1,34 @@
+package com.tianji.api.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.core.ExchangeTypes;
+import org.springframework.amqp.rabbit.annotation.Exchange;
+import org.springframework.amqp.rabbit.annotation.Queue;
+import org.springframework.amqp.rabbit.annotation.QueueBinding;
+import org.springframework.amqp.rabbit.annotation.RabbitListener;
+
+import java.util.List;
+
+import static com.tianji.common.constants.MqConstants.Exchange.USER_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.USER_UPDATED_KEY;
+
+@Slf4j
+@RequiredArgsConstructor
+public class UserChangeListener {
+
+    private final UserCache userCache;
+
+    /**
+     * 每个服务实例使用自己的匿名队列，都能收到用户变更消息
+     */
+    @RabbitListener(bindings = @QueueBinding(
+            value = @Queue(durable = "false", exclusive = "true", autoDelete = "true"),
+            exchange = @Exchange(name = USER_EXCHANGE, type = ExchangeTypes.TOPIC),
+            key = USER_UPDATED_KEY
+    ))
+    public void listenUserUpdated(List<Long> userIds){
+        log.debug("监听到用户信息变更，清理用户缓存：{}", userIds);
+        userCache.invalidate(userIds);
+    }
+}
@@ -0,0 +1,19 @@
+package com.tianji.api.config;
+
+import com.tianji.api.cache.UserCache;
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.client.remark.RemarkClient;
+import com.tianji.api.loader.BatchLoaderFactory;
+import org.springframework.context.annotation.Bean;
+
+public class BatchLoaderConfig {
+    /**
+     * 请求级别的远程调用批量加载器工厂
+     */
+    @Bean
+    public BatchLoaderFactory batchLoaderFactory(UserCache userCache, CourseClient courseClient,
+            CatalogueClient catalogueClient, RemarkClient remarkClient){
+        return new BatchLoaderFactory(userCache, courseClient, catalogueClient, remarkClient);
+    }
+}
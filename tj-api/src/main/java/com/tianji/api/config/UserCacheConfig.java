@@ -0,0 +1,32 @@
+package com.tianji.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.cache.UserCache;
+import com.tianji.api.client.user.UserClient;
+import com.tianji.api.dto.user.UserDTO;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+public class UserCacheConfig {
+    /**
+     * 用户信息的caffeine缓存，用户信息变更时通过MQ清理，有效期只是兜底
+     */
+    @Bean
+    public Cache<Long, UserDTO> userCaches(){
+        return Caffeine.newBuilder()
+                .initialCapacity(1024)
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMinutes(30))
+                .build();
+    }
+    /**
+     * 用户信息的缓存工具
+     */
+    @Bean
+    public UserCache userCache(Cache<Long, UserDTO> userCaches, UserClient userClient){
+        return new UserCache(userCaches, userClient);
+    }
+
+}
@@ -0,0 +1,19 @@
+package com.tianji.api.config;
+
+import com.tianji.api.cache.UserCache;
+import com.tianji.api.cache.UserChangeListener;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@ConditionalOnClass(name = "org.springframework.amqp.rabbit.annotation.RabbitListener")
+public class UserChangeListenerConfig {
+    /**
+     * 监听用户信息变更，清理缓存
+     */
+    @Bean
+    public UserChangeListener userChangeListener(UserCache userCache){
+        return new UserChangeListener(userCache);
+    }
+}
@@ -10,4 +10,12 @@ import lombok.NoArgsConstructor;
 public class LikedTimesDTO {
     private Long bizId;
     private Integer likedTimes;
+    /**
+     * 点赞总数的版本，即统计时间的毫秒值，消费者据此丢弃过期的消息
+     */
+    private Long version;
+
+    public static LikedTimesDTO of(Long bizId, Integer likedTimes) {
+        return new LikedTimesDTO(bizId, likedTimes, null);
+    }
 }
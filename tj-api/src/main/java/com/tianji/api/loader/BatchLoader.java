@@ -0,0 +1,114 @@
+package com.tianji.api.loader;
+
+import com.tianji.common.utils.AsyncUtils;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 请求级别的批量加载器，类似GraphQL的DataLoader。
+ * 先通过load登记要查询的key，dispatch时把登记的key去重后合并为一次批量查询，
+ * 同一个key在本次请求内只会查询一次。
+ *
+ * @param <K> key类型
+ * @param <V> 数据类型
+ */
+public class BatchLoader<K, V> {
+
+    private final Function<Set<K>, Map<K, V>> batchFunction;
+    private final Executor executor;
+    /**
+     * 本次请求内已登记的key，包括已完成和查询中的
+     */
+    private final Map<K, CompletableFuture<V>> memo = new HashMap<>();
+    /**
+     * 等待派发的key
+     */
+    private Map<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+
+    BatchLoader(Function<Set<K>, Map<K, V>> batchFunction, Executor executor) {
+        this.batchFunction = batchFunction;
+        this.executor = executor;
+    }
+
+    /**
+     * 登记要查询的key，派发后才会真正查询
+     *
+     * @param key key
+     * @return 查询结果，数据不存在时为null
+     */
+    public synchronized CompletableFuture<V> load(K key) {
+        if (key == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<V> future = memo.get(key);
+        if (future == null) {
+            future = new CompletableFuture<>();
+            memo.put(key, future);
+            pending.put(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * 批量登记要查询的key
+     *
+     * @param keys key集合
+     * @return 查询结果，按keys的顺序排列，不存在的数据不返回
+     */
+    public CompletableFuture<Map<K, V>> loadMany(Collection<K> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>(keys.size());
+        for (K key : keys) {
+            if (key != null) {
+                futures.put(key, load(key));
+            }
+        }
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0]))
+                .thenApply(v -> {
+                    Map<K, V> map = new LinkedHashMap<>(futures.size());
+                    futures.forEach((key, f) -> {
+                        V value = f.join();
+                        if (value != null) {
+                            map.put(key, value);
+                        }
+                    });
+                    return map;
+                });
+    }
+
+    /**
+     * 把等待中的key合并为一次批量查询，异步执行
+     *
+     * @return 本次派发的查询
+     */
+    public CompletableFuture<Void> dispatch() {
+        // 1.取出等待派发的key
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+        }
+        // 2.异步批量查询，传递当前用户和请求id，远程调用才能携带
+        return CompletableFuture.supplyAsync(AsyncUtils.wrap(
+                () -> batchFunction.apply(Collections.unmodifiableSet(batch.keySet()))
+        ), executor).handle((result, ex) -> {
+            // 3.通知等待的请求
+            for (Map.Entry<K, CompletableFuture<V>> e : batch.entrySet()) {
+                if (ex != null) {
+                    e.getValue().completeExceptionally(ex);
+                } else {
+                    e.getValue().complete(result == null ? null : result.get(e.getKey()));
+                }
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package com.tianji.api.loader;
+
+import com.tianji.api.cache.UserCache;
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.client.remark.RemarkClient;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量加载器工厂，每次请求创建一个新的BatchLoaderRegistry
+ */
+public class BatchLoaderFactory implements DisposableBean {
+
+    private final UserCache userCache;
+    private final CourseClient courseClient;
+    private final CatalogueClient catalogueClient;
+    private final RemarkClient remarkClient;
+    /**
+     * 执行批量查询的线程池，不注册为bean，避免影响各服务的默认线程池，队列满时由调用线程执行
+     */
+    private final ThreadPoolExecutor executor;
+
+    public BatchLoaderFactory(UserCache userCache, CourseClient courseClient,
+                              CatalogueClient catalogueClient, RemarkClient remarkClient) {
+        this.userCache = userCache;
+        this.courseClient = courseClient;
+        this.catalogueClient = catalogueClient;
+        this.remarkClient = remarkClient;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                8,
+                32,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000),
+                r -> {
+                    Thread t = new Thread(r, "batch-loader-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+
+    public BatchLoaderRegistry newRegistry() {
+        return new BatchLoaderRegistry(executor, userCache, courseClient, catalogueClient, remarkClient);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,138 @@
+package com.tianji.api.loader;
+
+import com.tianji.api.cache.UserCache;
+import com.tianji.api.client.course.CatalogueClient;
+import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.client.remark.RemarkClient;
+import com.tianji.api.dto.course.CataSimpleInfoDTO;
+import com.tianji.api.dto.course.CourseFullInfoDTO;
+import com.tianji.api.dto.course.CourseSimpleInfoDTO;
+import com.tianji.api.dto.user.UserDTO;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * 一次请求内的批量加载器集合，不是线程安全的容器，不要跨请求复用。
+ * 用法：先通过各个加载器登记要查询的id，再调用dispatchAll，各个服务的批量查询并行执行
+ */
+public class BatchLoaderRegistry {
+
+    private final Executor executor;
+    private final UserCache userCache;
+    private final CourseClient courseClient;
+    private final CatalogueClient catalogueClient;
+    private final RemarkClient remarkClient;
+
+    private final Map<String, BatchLoader<?, ?>> loaders = new LinkedHashMap<>();
+
+    BatchLoaderRegistry(Executor executor, UserCache userCache, CourseClient courseClient,
+                        CatalogueClient catalogueClient, RemarkClient remarkClient) {
+        this.executor = executor;
+        this.userCache = userCache;
+        this.courseClient = courseClient;
+        this.catalogueClient = catalogueClient;
+        this.remarkClient = remarkClient;
+    }
+
+    /**
+     * 获取或创建一个自定义的批量加载器
+     *
+     * @param name          加载器名称，同名的加载器共用
+     * @param batchFunction 批量查询函数
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> BatchLoader<K, V> loader(String name, Function<Set<K>, Map<K, V>> batchFunction) {
+        return (BatchLoader<K, V>) loaders.computeIfAbsent(name, n -> new BatchLoader<>(batchFunction, executor));
+    }
+
+    /**
+     * 用户信息，经过用户缓存查询
+     */
+    public BatchLoader<Long, UserDTO> users() {
+        return loader("users", userCache::queryUserMap);
+    }
+
+    /**
+     * 课程简单信息
+     */
+    public BatchLoader<Long, CourseSimpleInfoDTO> courseSimpleInfos() {
+        return loader("courseSimpleInfos", ids -> toMap(courseClient.getSimpleInfoList(ids), CourseSimpleInfoDTO::getId));
+    }
+
+    /**
+     * 课程完整信息，课程服务没有批量接口，同一批次内逐个查询
+     */
+    public BatchLoader<Long, CourseFullInfoDTO> courseFullInfos(boolean withCatalogue, boolean withTeachers) {
+        return loader("courseFullInfos:" + withCatalogue + ":" + withTeachers, ids -> {
+            Map<Long, CourseFullInfoDTO> map = new HashMap<>(ids.size());
+            for (Long id : ids) {
+                CourseFullInfoDTO info = courseClient.getCourseInfoById(id, withCatalogue, withTeachers);
+                if (info != null) {
+                    map.put(id, info);
+                }
+            }
+            return map;
+        });
+    }
+
+    /**
+     * 章节简单信息
+     */
+    public BatchLoader<Long, CataSimpleInfoDTO> catalogues() {
+        return loader("catalogues", ids -> toMap(catalogueClient.batchQueryCatalogue(ids), CataSimpleInfoDTO::getId));
+    }
+
+    /**
+     * 当前用户是否点赞了业务
+     */
+    public BatchLoader<Long, Boolean> bizLiked() {
+        return loader("bizLiked", ids -> {
+            Set<Long> liked = remarkClient.isBizLiked(ids);
+            Map<Long, Boolean> map = new HashMap<>(ids.size());
+            for (Long id : ids) {
+                map.put(id, liked != null && liked.contains(id));
+            }
+            return map;
+        });
+    }
+
+    /**
+     * 派发所有加载器中等待的查询，各加载器并行执行，等待全部完成
+     */
+    public void dispatchAll() {
+        List<CompletableFuture<Void>> futures = new ArrayList<>(loaders.size());
+        for (BatchLoader<?, ?> loader : loaders.values()) {
+            futures.add(loader.dispatch());
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+    }
+
+    /**
+     * 获取已派发的查询结果，查询失败时抛出原始异常
+     */
+    public <T> T get(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static <T> Map<Long, T> toMap(List<T> list, Function<T, Long> idMapper) {
+        if (list == null || list.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Long, T> map = new HashMap<>(list.size());
+        for (T t : list) {
+            map.put(idMapper.apply(t), t);
+        }
+        return map;
+    }
+}
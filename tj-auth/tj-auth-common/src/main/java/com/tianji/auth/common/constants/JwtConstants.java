@@ -5,8 +5,14 @@ import java.time.Duration;
 public class JwtConstants {
     public static final String PAYLOAD_USER_KEY = "user";
     public static final String PAYLOAD_JTI_KEY = "jti";
+    // access-token所属会话的标识，登录时生成，刷新token时保持不变
+    public static final String PAYLOAD_SID_KEY = "sid";
 
     public static final String JWT_REDIS_KEY_PREFIX = "jwt:uid:";
+    // 用户当前会话的标识，有效期与refresh-token一致，注销时据此吊销该会话签发的所有access-token
+    public static final String JWT_SID_REDIS_KEY_PREFIX = "jwt:sid:";
+    // 已注销的会话，member是会话标识，score是注销时间，保留一个access-token有效期
+    public static final String JWT_REVOKED_KEY = "jwt:revoked";
     // token过期时间，测试期间改为 1天，正常是5分钟
     public static final Duration JWT_TOKEN_TTL = Duration.ofMinutes(5);
     // public static final Duration JWT_TOKEN_TTL = Duration.ofMinutes(60 * 24);
@@ -25,6 +31,8 @@ public class JwtConstants {
     public static final String AUTH_PRIVILEGE_KEY = "auth:privileges";
     public static final String AUTH_PRIVILEGE_VERSION_KEY = "version";
     public static final String LOCK_AUTH_PRIVILEGE_KEY = "lock:auth:privileges";
+    // 权限变更通知频道，消息格式为 "版本号:权限id,权限id"，id为空表示全量变更
+    public static final String AUTH_PRIVILEGE_CHANNEL = "auth:privileges:changed";
     /* 权限缓存 KEY  end */
 
 }
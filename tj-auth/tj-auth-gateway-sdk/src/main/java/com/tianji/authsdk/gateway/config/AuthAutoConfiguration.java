@@ -6,7 +6,14 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.cloud.client.discovery.DiscoveryClient;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.nio.charset.StandardCharsets;
+
+import static com.tianji.auth.common.constants.JwtConstants.AUTH_PRIVILEGE_CHANNEL;
 
 @Configuration
 public class AuthAutoConfiguration {
@@ -21,4 +28,18 @@ public class AuthAutoConfiguration {
     public AuthUtil authUtil(JwtSignerHolder jwtSignerHolder, StringRedisTemplate stringRedisTemplate){
         return new AuthUtil(jwtSignerHolder, stringRedisTemplate);
     }
+
+    /**
+     * 订阅权限变更通知，增量刷新网关的权限缓存
+     */
+    @Bean
+    public RedisMessageListenerContainer privilegeListenerContainer(
+            RedisConnectionFactory redisConnectionFactory, AuthUtil authUtil){
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(
+                (message, pattern) -> authUtil.onPrivilegeChanged(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(AUTH_PRIVILEGE_CHANNEL));
+        return container;
+    }
 }
@@ -0,0 +1,121 @@
+package com.tianji.authsdk.gateway.util;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+
+/**
+ * 预编译的路径匹配器，按路径的每一段（以/分隔，例如 GET:、users、{id}）构建前缀树：
+ * <ol>
+ *     <li>普通的段作为子节点，按段精确查找</li>
+ *     <li>包含通配符的段（*、?、{}）统一放在通配子节点中</li>
+ *     <li>**可以匹配任意多段，挂在所在节点上</li>
+ * </ol>
+ * 查找时只沿着可能匹配的分支收集候选的匹配符，最后用AntPathMatcher校验，因此匹配规则与AntPathMatcher完全一致。
+ * 对象创建后不可变，可以在多线程间共享，更新时整体替换。
+ */
+public class AntPathTrie {
+
+    private static final String PATH_SEPARATOR = "/";
+    private static final String DEEP_WILDCARD = "**";
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+    private final Node root = new Node();
+    private final int size;
+
+    private AntPathTrie(Collection<String> patterns) {
+        for (String pattern : patterns) {
+            insert(pattern);
+        }
+        this.size = patterns.size();
+    }
+
+    public static AntPathTrie of(Collection<String> patterns) {
+        return new AntPathTrie(patterns == null ? Collections.emptyList() : patterns);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 是否有匹配的路径匹配符
+     */
+    public boolean matches(String path) {
+        return match(path) != null;
+    }
+
+    /**
+     * 查找与路径匹配的路径匹配符，有多个时返回最精确的一个
+     *
+     * @return 匹配符，没有则返回null
+     */
+    public String match(String path) {
+        // 1.收集候选的匹配符
+        String[] tokens = tokenize(path);
+        List<String> candidates = new ArrayList<>();
+        collect(root, tokens, 0, candidates);
+        // 2.校验
+        String matched = null;
+        for (String pattern : candidates) {
+            if (!antPathMatcher.match(pattern, path)) {
+                continue;
+            }
+            if (matched == null || antPathMatcher.getPatternComparator(path).compare(pattern, matched) < 0) {
+                matched = pattern;
+            }
+        }
+        return matched;
+    }
+
+    private void insert(String pattern) {
+        Node node = root;
+        for (String token : tokenize(pattern)) {
+            if (DEEP_WILDCARD.equals(token)) {
+                // **后面的部分交给AntPathMatcher校验
+                node.deepPatterns.add(pattern);
+                return;
+            }
+            node = isWildcard(token) ?
+                    (node.wildcardChild == null ? node.wildcardChild = new Node() : node.wildcardChild) :
+                    node.children.computeIfAbsent(token, k -> new Node());
+        }
+        node.patterns.add(pattern);
+    }
+
+    private void collect(Node node, String[] tokens, int index, List<String> candidates) {
+        candidates.addAll(node.deepPatterns);
+        if (index == tokens.length) {
+            candidates.addAll(node.patterns);
+            // 路径以/结尾时，末尾的*可以匹配空的一段
+            if (node.wildcardChild != null) {
+                candidates.addAll(node.wildcardChild.patterns);
+            }
+            return;
+        }
+        Node child = node.children.get(tokens[index]);
+        if (child != null) {
+            collect(child, tokens, index + 1, candidates);
+        }
+        if (node.wildcardChild != null) {
+            collect(node.wildcardChild, tokens, index + 1, candidates);
+        }
+    }
+
+    private static boolean isWildcard(String token) {
+        return token.indexOf('*') >= 0 || token.indexOf('?') >= 0 || token.indexOf('{') >= 0;
+    }
+
+    private static String[] tokenize(String path) {
+        // 与AntPathMatcher的分段方式一致：不去除空格，忽略空的段
+        return StringUtils.tokenizeToStringArray(path, PATH_SEPARATOR, false, true);
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcardChild;
+        private final List<String> patterns = new ArrayList<>(1);
+        private final List<String> deepPatterns = new ArrayList<>(1);
+    }
+}
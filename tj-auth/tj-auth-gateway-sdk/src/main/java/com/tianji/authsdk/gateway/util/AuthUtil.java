@@ -5,10 +5,16 @@ import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.CollectionUtil;
 import cn.hutool.core.exceptions.ValidateException;
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
 import cn.hutool.json.JSONObject;
 import cn.hutool.json.JSONUtil;
 import cn.hutool.jwt.JWT;
 import cn.hutool.jwt.JWTValidator;
+import cn.hutool.jwt.RegisteredPayload;
+import cn.hutool.jwt.signers.JWTSigner;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import com.tianji.auth.common.domain.PrivilegeRoleDTO;
 import com.tianji.common.domain.R;
 import com.tianji.common.domain.dto.LoginUserDTO;
@@ -18,10 +24,11 @@ import com.tianji.common.utils.StringUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.BoundHashOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.scheduling.annotation.Scheduled;
-import org.springframework.util.AntPathMatcher;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static com.tianji.auth.common.constants.AuthErrorInfo.Code.EXPIRED_TOKEN_CODE;
@@ -31,14 +38,25 @@ import static com.tianji.auth.common.constants.JwtConstants.*;
 
 @Slf4j
 public class AuthUtil {
-    // 缓存权限信息
-    private Map<String, PrivilegeRoleDTO> privileges = new HashMap<>();
-    // 要拦截的路径匹配符的集合
-    private Set<String> paths = new HashSet<>();
-    // 权限版本信息，减少不必要的缓存处理
-    private int privilegeVersion;
-
-    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+    private static final int TOKEN_CACHE_MAX_SIZE = 100000;
+
+    // 缓存权限信息，以及预编译为前缀树的要拦截的路径匹配符，两者一起整体替换
+    private volatile PrivilegeCache privilegeCache = new PrivilegeCache(Collections.emptyMap());
+    // 权限版本信息，减少不必要的缓存处理，只在持有this锁时读写
+    private long privilegeVersion;
+
+    // 已校验通过的token缓存，key是token的摘要，按token的exp过期
+    private final Cache<String, VerifiedToken> tokenCache = Caffeine.newBuilder()
+            .maximumSize(TOKEN_CACHE_MAX_SIZE)
+            .expireAfter(new TokenExpiry())
+            .build();
+    // 已吊销的会话，保留一个access-token有效期，与Redis中的吊销记录一致。
+    // 不能按数量淘汰，否则注销高峰时被淘汰的会话会重新生效，数量由Redis中一个有效期内的吊销记录决定
+    private final Cache<String, Boolean> revokedSessions = Caffeine.newBuilder()
+            .expireAfterWrite(JWT_TOKEN_TTL)
+            .build();
+    // 已拉取的吊销记录的最大时间，下次从这里开始增量拉取
+    private double revokedScore = System.currentTimeMillis() - JWT_TOKEN_TTL.toMillis();
     private final JwtSignerHolder jwtSignerHolder;
     private final StringRedisTemplate stringRedisTemplate;
     private final BoundHashOperations<String, String, String> hashOps;
@@ -54,31 +72,43 @@ public class AuthUtil {
         if(StringUtils.isBlank(token)){
             return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
         }
+        // 2.查询缓存，同一个token在有效期内只需验签和解析一次
+        JWTSigner jwtSigner = jwtSignerHolder.getJwtSigner();
+        String digest = SecureUtil.sha256(token);
+        VerifiedToken verified = tokenCache.getIfPresent(digest);
+        if (verified != null && verified.jwtSigner == jwtSigner) {
+            if (isRevoked(verified.sid)) {
+                // 会话已注销
+                tokenCache.invalidate(digest);
+                return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
+            }
+            return R.ok(verified.user);
+        }
         JWT jwt = null;
         try {
-            jwt = JWT.of(token).setSigner(jwtSignerHolder.getJwtSigner());
+            jwt = JWT.of(token).setSigner(jwtSigner);
         } catch (Exception e) {
             return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
         }
-        // 2.校验jwt是否有效
+        // 3.校验jwt是否有效
         if (!jwt.verify()) {
             // 验证失败，返回空
             return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
         }
-        // 3.校验是否过期
+        // 4.校验是否过期
         try {
             JWTValidator.of(jwt).validateDate();
         } catch (ValidateException e) {
             return R.error(EXPIRED_TOKEN_CODE, EXPIRED_TOKEN);
         }
-        // 4.数据格式校验
+        // 5.数据格式校验
         Object userPayload = jwt.getPayload(PAYLOAD_USER_KEY);
         if (userPayload == null) {
             // 数据为空
             return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN_PAYLOAD);
         }
 
-        // 5.数据解析
+        // 6.数据解析
         LoginUserDTO userDTO;
         try {
             userDTO = ((JSONObject)userPayload).toBean(LoginUserDTO.class);
@@ -87,13 +117,31 @@ public class AuthUtil {
             return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN_PAYLOAD);
         }
 
-        // 6.返回
+        // 7.校验会话是否已注销
+        Object sidPayload = jwt.getPayload(PAYLOAD_SID_KEY);
+        String sid = sidPayload == null ? null : sidPayload.toString();
+        if (isRevoked(sid)) {
+            return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
+        }
+
+        // 8.写入缓存，没有过期时间的token不缓存
+        Long exp = jwt.getPayloads().getLong(RegisteredPayload.EXPIRES_AT);
+        if (exp != null) {
+            tokenCache.put(digest, new VerifiedToken(userDTO, sid, jwtSigner, TimeUnit.SECONDS.toMillis(exp)));
+        }
+
+        // 9.返回
         return R.ok(userDTO);
     }
 
+    private boolean isRevoked(String sid) {
+        return sid != null && revokedSessions.getIfPresent(sid) != null;
+    }
+
     public void checkAuth(String antPath, R<LoginUserDTO> r){
         // 1.判断是否是需要权限的路径
-        String matchPath = findMatchPath(antPath);
+        PrivilegeCache cache = this.privilegeCache;
+        String matchPath = cache.paths.match(antPath);
         if(matchPath == null){
             // 没有权限限制，直接放行
             return;
@@ -104,7 +152,7 @@ public class AuthUtil {
             throw new UnauthorizedException(r.getCode(), r.getMsg());
         }
         // 3.获取当前路径所需权限
-        PrivilegeRoleDTO pathPrivilege = findPathPrivilege(matchPath);
+        PrivilegeRoleDTO pathPrivilege = cache.privileges.get(matchPath);
 
         // 4.权限判断
         Set<Long> requiredRoles = pathPrivilege.getRoles();
@@ -114,21 +162,6 @@ public class AuthUtil {
         }
     }
 
-    private String findMatchPath(String antPath){
-        String matchPath = null;
-        for (String pathPattern : paths) {
-            if(antPathMatcher.match(pathPattern, antPath)){
-                matchPath = pathPattern;
-                break;
-            }
-        }
-        return matchPath;
-    }
-
-    private PrivilegeRoleDTO findPathPrivilege(String path){
-        return privileges.get(path);
-    }
-
     private List<PrivilegeRoleDTO> loadPrivileges(){
         List<String> values = hashOps.values();
         if(CollUtil.isEmpty(values)){
@@ -139,19 +172,21 @@ public class AuthUtil {
                 .collect(Collectors.toList());
     }
 
-    private int currentVersion() {
+    private long currentVersion() {
         String version = stringRedisTemplate.opsForValue().get(AUTH_PRIVILEGE_VERSION_KEY);
         if(StrUtil.isEmpty(version)){
             return 0;
         }
-        return Integer.parseInt(version);
+        return Long.parseLong(version);
     }
 
-
+    /**
+     * 权限变更通知的兜底，通知丢失时通过比对版本全量加载
+     */
     @Scheduled(fixedDelay = 20000)
-    public void refreshTask(){
+    public synchronized void refreshTask(){
         // 1.获取版本号
-        int currentVersion = currentVersion();
+        long currentVersion = currentVersion();
         if (currentVersion == this.privilegeVersion) {
             // 版本一致，说明数据没有更新，直接结束任务
             return;
@@ -163,14 +198,117 @@ public class AuthUtil {
             this.privilegeVersion = currentVersion;
             return;
         }
-        // 3.数据处理
-        Map<String, PrivilegeRoleDTO> map = new HashMap<>();
+        // 3.数据处理，构建好新的前缀树再整体替换
+        Map<Long, PrivilegeRoleDTO> map = new HashMap<>();
         for (PrivilegeRoleDTO p : privilegeRoleDTOS) {
-            map.put(p.getAntPath(), p);
-            this.privileges = map;
+            map.put(p.getId(), p);
         }
-        this.paths = map.keySet();
+        this.privilegeCache = new PrivilegeCache(map);
         // 4.更新版本
         this.privilegeVersion = currentVersion;
     }
+
+    /**
+     * 处理权限变更通知，只加载变更的权限，在副本上修改后整体替换
+     *
+     * @param message 格式为 "版本号:权限id,权限id"，id为空表示全量变更
+     */
+    public synchronized void onPrivilegeChanged(String message) {
+        // 1.解析消息
+        int index = message.indexOf(':');
+        if (index < 0) {
+            return;
+        }
+        long version = Long.parseLong(message.substring(0, index));
+        if (version <= this.privilegeVersion) {
+            // 已经是最新，直接忽略
+            return;
+        }
+        List<String> ids = StrUtil.split(message.substring(index + 1), ',', true, true);
+        // 2.版本不连续说明有通知丢失，或者是全量变更，全量加载
+        if (version != this.privilegeVersion + 1 || ids.isEmpty()) {
+            refreshTask();
+            return;
+        }
+        // 3.增量加载变更的权限，不存在说明已删除
+        List<String> values = hashOps.multiGet(ids);
+        Map<Long, PrivilegeRoleDTO> map = new HashMap<>(this.privilegeCache.byId);
+        for (int i = 0; i < ids.size(); i++) {
+            String json = values == null ? null : values.get(i);
+            if (json == null) {
+                map.remove(Long.valueOf(ids.get(i)));
+            } else {
+                map.put(Long.valueOf(ids.get(i)), JSONUtil.toBean(json, PrivilegeRoleDTO.class));
+            }
+        }
+        // 4.整体替换并更新版本
+        this.privilegeCache = new PrivilegeCache(map);
+        this.privilegeVersion = version;
+    }
+
+    @Scheduled(fixedDelay = 1000)
+    public void refreshRevokedTask(){
+        // 1.增量拉取吊销的会话
+        Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                .rangeByScoreWithScores(JWT_REVOKED_KEY, revokedScore, Double.POSITIVE_INFINITY);
+        if (CollUtil.isEmpty(tuples)) {
+            return;
+        }
+        // 2.记录吊销的会话，缓存中属于这些会话的token在下次命中时失效
+        double maxScore = revokedScore;
+        for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+            revokedSessions.put(tuple.getValue(), Boolean.TRUE);
+            if (tuple.getScore() != null && tuple.getScore() > maxScore) {
+                maxScore = tuple.getScore();
+            }
+        }
+        // 3.更新拉取位置，同一毫秒内后写入的记录下次还能拉到
+        this.revokedScore = maxScore;
+    }
+
+    private static class VerifiedToken {
+        private final LoginUserDTO user;
+        private final String sid;
+        private final JWTSigner jwtSigner;
+        private final long expireAt;
+
+        private VerifiedToken(LoginUserDTO user, String sid, JWTSigner jwtSigner, long expireAt) {
+            this.user = user;
+            this.sid = sid;
+            this.jwtSigner = jwtSigner;
+            this.expireAt = expireAt;
+        }
+    }
+
+    private static class TokenExpiry implements Expiry<String, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(String key, VerifiedToken value, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, value.expireAt - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private static class PrivilegeCache {
+        private final Map<Long, PrivilegeRoleDTO> byId;
+        private final Map<String, PrivilegeRoleDTO> privileges;
+        private final AntPathTrie paths;
+
+        private PrivilegeCache(Map<Long, PrivilegeRoleDTO> byId) {
+            this.byId = byId;
+            this.privileges = new HashMap<>(byId.size());
+            for (PrivilegeRoleDTO p : byId.values()) {
+                this.privileges.put(p.getAntPath(), p);
+            }
+            this.paths = AntPathTrie.of(privileges.keySet());
+        }
+    }
 }
@@ -0,0 +1,116 @@
+package com.tianji.authsdk.gateway.benchmark;
+
+import cn.hutool.core.exceptions.ValidateException;
+import cn.hutool.crypto.SecureUtil;
+import cn.hutool.json.JSONObject;
+import cn.hutool.jwt.JWT;
+import cn.hutool.jwt.JWTValidator;
+import cn.hutool.jwt.signers.JWTSigner;
+import cn.hutool.jwt.signers.JWTSignerUtil;
+import com.tianji.authsdk.gateway.util.AuthUtil;
+import com.tianji.authsdk.gateway.util.JwtSignerHolder;
+import com.tianji.common.domain.R;
+import com.tianji.common.domain.dto.LoginUserDTO;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.security.KeyPair;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static com.tianji.auth.common.constants.AuthErrorInfo.Code.EXPIRED_TOKEN_CODE;
+import static com.tianji.auth.common.constants.AuthErrorInfo.Code.INVALID_TOKEN_CODE;
+import static com.tianji.auth.common.constants.AuthErrorInfo.Msg.EXPIRED_TOKEN;
+import static com.tianji.auth.common.constants.AuthErrorInfo.Msg.INVALID_TOKEN;
+import static com.tianji.auth.common.constants.JwtConstants.*;
+
+/**
+ * 网关解析token的基准测试，SampleTime模式输出p50、p99等分位数
+ * <ol>
+ *     <li>parseUncached：原来的方式，每个请求都验签、校验有效期并解析用户信息</li>
+ *     <li>parseCached：{@link AuthUtil#parseToken}，同一个token只验签一次，之后命中缓存</li>
+ * </ol>
+ * 单线程运行，每次调用的耗时近似于每个请求消耗的CPU时间。
+ * <p>
+ * 运行方式：mvn -pl tj-auth/tj-auth-gateway-sdk -am test-compile 后执行main方法，或在IDE中直接运行
+ * </p>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseTokenBenchmark {
+
+    /**
+     * 在线用户数，即不同token的数量
+     */
+    @Param({"1000"})
+    private int users;
+
+    private String[] tokens;
+    private JWTSigner verifier;
+    private AuthUtil authUtil;
+    private int index;
+
+    @Setup
+    public void setup() {
+        // 1.auth服务用私钥签发token，网关只持有公钥
+        KeyPair keyPair = SecureUtil.generateKeyPair("RSA", 2048);
+        JWTSigner signer = JWTSignerUtil.createSigner(JWT_ALGORITHM, keyPair);
+        verifier = JWTSignerUtil.createSigner(JWT_ALGORITHM, keyPair.getPublic());
+        tokens = new String[users];
+        for (int i = 0; i < users; i++) {
+            LoginUserDTO user = new LoginUserDTO();
+            user.setUserId(i + 1L);
+            user.setRoleId(2L);
+            user.setRememberMe(false);
+            tokens[i] = JWT.create()
+                    .setPayload(PAYLOAD_USER_KEY, user)
+                    .setPayload(PAYLOAD_SID_KEY, String.valueOf(i))
+                    .setExpiresAt(new Date(System.currentTimeMillis() + JWT_TOKEN_TTL.toMillis()))
+                    .setSigner(signer)
+                    .sign();
+        }
+        // 2.网关的AuthUtil，解析token不需要访问Redis
+        JwtSignerHolder holder = new JwtSignerHolder(null);
+        holder.setJwtSigner(verifier);
+        authUtil = new AuthUtil(holder, new StringRedisTemplate());
+    }
+
+    @Benchmark
+    public R<LoginUserDTO> parseUncached() {
+        String token = nextToken();
+        JWT jwt = JWT.of(token).setSigner(verifier);
+        if (!jwt.verify()) {
+            return R.error(INVALID_TOKEN_CODE, INVALID_TOKEN);
+        }
+        try {
+            JWTValidator.of(jwt).validateDate();
+        } catch (ValidateException e) {
+            return R.error(EXPIRED_TOKEN_CODE, EXPIRED_TOKEN);
+        }
+        return R.ok(((JSONObject) jwt.getPayload(PAYLOAD_USER_KEY)).toBean(LoginUserDTO.class));
+    }
+
+    @Benchmark
+    public R<LoginUserDTO> parseCached() {
+        return authUtil.parseToken(nextToken());
+    }
+
+    private String nextToken() {
+        String token = tokens[index];
+        index = index + 1 == tokens.length ? 0 : index + 1;
+        return token;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ParseTokenBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,98 @@
+package com.tianji.authsdk.gateway.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AntPathTrieTest {
+
+    private static final List<String> PATTERNS = List.of(
+            "GET:/users/me",
+            "GET:/users/{id}",
+            "GET:/users/{id}/courses/*",
+            "PUT:/users/{id:\\d+}",
+            "POST:/users/**",
+            "GET:/courses/*",
+            "GET:/courses/*/catalogues",
+            "GET:/courses/**/list",
+            "GET:/orders/?",
+            "GET:/orders/page?",
+            "DELETE:/orders/*.json",
+            "*:/public/**",
+            "GET:/static/**",
+            "/ping",
+            "/**/health"
+    );
+
+    private static final List<String> PATHS = List.of(
+            // 精确匹配与变量
+            "GET:/users/me", "GET:/users/1", "GET:/users/1/courses/2", "GET:/users/1/courses",
+            "PUT:/users/12", "PUT:/users/abc", "POST:/users", "POST:/users/1/2/3", "GET:/users",
+            // *
+            "GET:/courses/1", "GET:/courses/1/catalogues", "GET:/courses/1/2",
+            // **
+            "GET:/courses/list", "GET:/courses/1/2/list", "GET:/courses/1/2/list/3",
+            "GET:/public/a", "POST:/public/a/b", "GET:/static", "GET:/static/css/a.css",
+            "/ping", "/health", "/a/b/health", "GET:/health",
+            // ?
+            "GET:/orders/1", "GET:/orders/12", "GET:/orders/page1", "GET:/orders/page",
+            "DELETE:/orders/1.json", "DELETE:/orders/1.xml",
+            // 结尾的/
+            "GET:/users/me/", "GET:/users/1/", "GET:/courses/", "GET:/courses/1/catalogues/", "/ping/",
+            "GET:/static/", "GET:/orders/",
+            // 不匹配
+            "GET:/unknown", "HEAD:/users/1", "", "/"
+    );
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    @Test
+    void matchSameAsAntPathMatcher() {
+        AntPathTrie trie = AntPathTrie.of(PATTERNS);
+        for (String path : PATHS) {
+            String expected = bruteForce(path);
+            String actual = trie.match(path);
+            if (expected == null) {
+                assertNull(actual, () -> "path = " + path);
+                continue;
+            }
+            assertNotNull(actual, () -> "path = " + path + ", expected = " + expected);
+            assertTrue(antPathMatcher.match(actual, path), () -> "path = " + path + ", actual = " + actual);
+            // 同样精确的匹配符可能有多个，只要求精确程度一致
+            assertEquals(0, antPathMatcher.getPatternComparator(path).compare(expected, actual),
+                    () -> "path = " + path + ", expected = " + expected + ", actual = " + actual);
+        }
+    }
+
+    @Test
+    void matchMostSpecific() {
+        AntPathTrie trie = AntPathTrie.of(PATTERNS);
+        assertEquals("GET:/users/me", trie.match("GET:/users/me"));
+        assertEquals("GET:/users/{id}", trie.match("GET:/users/1"));
+        assertEquals("GET:/courses/*/catalogues", trie.match("GET:/courses/1/catalogues"));
+        assertEquals("PUT:/users/{id:\\d+}", trie.match("PUT:/users/12"));
+        assertNull(trie.match("PUT:/users/abc"));
+        assertEquals("GET:/orders/?", trie.match("GET:/orders/1"));
+        assertNull(trie.match("GET:/orders/12"));
+    }
+
+    @Test
+    void emptyPatterns() {
+        AntPathTrie trie = AntPathTrie.of(null);
+        assertEquals(0, trie.size());
+        assertFalse(trie.matches("GET:/users/1"));
+        assertFalse(AntPathTrie.of(List.of()).matches("/"));
+    }
+
+    private String bruteForce(String path) {
+        Comparator<String> comparator = antPathMatcher.getPatternComparator(path);
+        return PATTERNS.stream()
+                .filter(p -> antPathMatcher.match(p, path))
+                .min(comparator)
+                .orElse(null);
+    }
+}
@@ -42,7 +42,7 @@ public class AccountServiceImpl implements IAccountService{
         // 2.1.设置记住我标记
         detail.setRememberMe(loginDTO.getRememberMe());
         // 2.2.生成token
-        String token = generateToken(detail);
+        String token = generateToken(detail, jwtTool.createJti());
 
         // 3.计入登录信息表
         loginRecordService.loginSuccess(loginDTO.getCellPhone(), detail.getUserId());
@@ -50,11 +50,12 @@ public class AccountServiceImpl implements IAccountService{
         return token;
     }
 
-    private String generateToken(LoginUserDTO detail) {
-        // 2.2.生成access-token
-        String token = jwtTool.createToken(detail);
-        // 2.3.生成refresh-token，将refresh-token的JTI 保存到Redis
-        String refreshToken = jwtTool.createRefreshToken(detail);
+    private String generateToken(LoginUserDTO detail, String sid) {
+        // 2.2.生成access-token，携带会话标识
+        String jti = jwtTool.createJti();
+        String token = jwtTool.createToken(detail, sid);
+        // 2.3.生成refresh-token，将refresh-token的JTI和会话标识保存到Redis
+        String refreshToken = jwtTool.createRefreshToken(detail, jti, sid);
         // 2.4.将refresh-token写入用户cookie，并设置HttpOnly为true
         int maxAge = BooleanUtils.isTrue(detail.getRememberMe()) ?
                 (int) JwtConstants.JWT_REMEMBER_ME_TTL.toSeconds() : -1;
@@ -84,7 +85,8 @@ public class AccountServiceImpl implements IAccountService{
     public String refreshToken(String refreshToken) {
         // 1.校验refresh-token,校验JTI
         LoginUserDTO userDTO = jwtTool.parseRefreshToken(refreshToken);
-        // 2.生成新的access-token、refresh-token
-        return generateToken(userDTO);
+        // 2.生成新的access-token、refresh-token，沿用原来的会话标识，注销时刷新前签发的access-token也会被吊销
+        String sid = jwtTool.getSessionId(userDTO.getUserId());
+        return generateToken(userDTO, sid != null ? sid : jwtTool.createJti());
     }
 }
@@ -145,7 +145,7 @@ public class PrivilegeServiceImpl extends ServiceImpl<PrivilegeMapper, Privilege
         // 4.写入数据库
         rolePrivilegeService.saveBatch(rolePrivileges);
         // 5.重置缓存
-        privilegeCache.initPrivilegesCache(listPrivilegeRoles());
+        privilegeCache.initPrivilegesCache(listPrivilegeRoles(), privilegeIds);
     }
 
     @Override
@@ -154,6 +154,6 @@ public class PrivilegeServiceImpl extends ServiceImpl<PrivilegeMapper, Privilege
         // 1.删除
         rolePrivilegeService.deleteRolePrivileges(roleId, privilegeIds);
         // 2.移除对应角色权限缓存
-        privilegeCache.initPrivilegesCache(listPrivilegeRoles());
+        privilegeCache.initPrivilegesCache(listPrivilegeRoles(), privilegeIds);
     }
 }
@@ -21,6 +21,7 @@ import org.springframework.stereotype.Component;
 import java.security.KeyPair;
 import java.time.Duration;
 import java.util.Date;
+import java.util.List;
 
 import static com.tianji.auth.common.constants.JwtConstants.JWT_REFRESH_TTL;
 import static com.tianji.auth.common.constants.JwtConstants.JWT_TOKEN_TTL;
@@ -35,16 +36,27 @@ public class JwtTool {
         this.jwtSigner = JWTSignerUtil.createSigner("rs256", keyPair);
     }
 
+    /**
+     * 生成一个新的JTI，也用于生成会话标识
+     *
+     * @return JTI
+     */
+    public String createJti() {
+        return UUID.randomUUID().toString(true);
+    }
+
     /**
      * 创建 access-token
      *
      * @param userDTO 用户信息
+     * @param sid     会话标识，登录时生成，刷新token时沿用，注销时据此吊销
      * @return access-token
      */
-    public String createToken(LoginUserDTO userDTO) {
+    public String createToken(LoginUserDTO userDTO, String sid) {
         // 1.生成jws
         return JWT.create()
                 .setPayload(JwtConstants.PAYLOAD_USER_KEY, userDTO)
+                .setPayload(JwtConstants.PAYLOAD_SID_KEY, sid)
                 .setExpiresAt(new Date(System.currentTimeMillis() + JWT_TOKEN_TTL.toMillis()))
                 .setSigner(jwtSigner)
                 .sign();
@@ -54,28 +66,45 @@ public class JwtTool {
      * 创建刷新token，并将token的JTI记录到Redis中
      *
      * @param userDetail 用户信息
+     * @param jti        JTI
+     * @param sid        会话标识
      * @return 刷新token
      */
-    public String createRefreshToken(LoginUserDTO userDetail) {
-        // 1.生成 JTI
-        String jti = UUID.randomUUID().toString(true);
-        // 2.生成jwt
-        // 2.1.如果是记住我，则有效期7天，否则30分钟
+    public String createRefreshToken(LoginUserDTO userDetail, String jti, String sid) {
+        // 1.生成jwt
+        // 1.1.如果是记住我，则有效期7天，否则30分钟
         Duration ttl = BooleanUtils.isTrue(userDetail.getRememberMe()) ?
                 JwtConstants.JWT_REMEMBER_ME_TTL : JWT_REFRESH_TTL;
-        // 2.2.生成token
+        // 1.2.生成token
         String token = JWT.create()
                 .setJWTId(jti)
                 .setPayload(JwtConstants.PAYLOAD_USER_KEY, userDetail)
                 .setExpiresAt(new Date(System.currentTimeMillis() + ttl.toMillis()))
                 .setSigner(jwtSigner)
                 .sign();
-        // 3.缓存jti，有效期与token一致，过期或删除JTI后，对应的refresh-token失效
+        // 2.缓存jti，有效期与token一致，过期或删除JTI后，对应的refresh-token失效
         stringRedisTemplate.opsForValue()
                 .set(JwtConstants.JWT_REDIS_KEY_PREFIX + userDetail.getUserId(), jti, ttl);
+        // 3.缓存会话标识，有效期与token一致
+        stringRedisTemplate.opsForValue()
+                .set(JwtConstants.JWT_SID_REDIS_KEY_PREFIX + userDetail.getUserId(), sid, ttl);
         return token;
     }
 
+    /**
+     * 查询用户当前会话的标识，刷新token时沿用，注销时才能吊销该会话签发过的所有access-token
+     *
+     * @param userId 用户id
+     * @return 会话标识，没有记录时返回当前refresh-token的JTI，即旧版本签发的access-token的会话标识
+     */
+    public String getSessionId(Long userId) {
+        String sid = stringRedisTemplate.opsForValue().get(JwtConstants.JWT_SID_REDIS_KEY_PREFIX + userId);
+        if (sid != null) {
+            return sid;
+        }
+        return stringRedisTemplate.opsForValue().get(JwtConstants.JWT_REDIS_KEY_PREFIX + userId);
+    }
+
     /**
      * 解析刷新token
      *
@@ -130,9 +159,21 @@ public class JwtTool {
     }
 
     /**
-     * 清理刷新refresh-token的jti，本质是refresh-token作废
+     * 清理刷新refresh-token的jti，本质是refresh-token作废，
+     * 同时吊销该会话下尚未过期的access-token，包括刷新之前签发的，网关会定时拉取吊销记录
      */
     public void cleanJtiCache() {
-        stringRedisTemplate.delete(JwtConstants.JWT_REDIS_KEY_PREFIX + UserContext.getUser());
+        // 1.查询会话标识，删除jti和会话标识
+        Long userId = UserContext.getUser();
+        String sid = getSessionId(userId);
+        stringRedisTemplate.delete(List.of(
+                JwtConstants.JWT_REDIS_KEY_PREFIX + userId, JwtConstants.JWT_SID_REDIS_KEY_PREFIX + userId));
+        if (sid == null) {
+            return;
+        }
+        // 2.记录吊销的会话，并清理超过access-token有效期的旧记录
+        long now = System.currentTimeMillis();
+        stringRedisTemplate.opsForZSet().add(JwtConstants.JWT_REVOKED_KEY, sid, now);
+        stringRedisTemplate.opsForZSet().removeRangeByScore(JwtConstants.JWT_REVOKED_KEY, 0, now - JWT_TOKEN_TTL.toMillis());
     }
 }
@@ -10,13 +10,9 @@ import org.springframework.data.redis.core.BoundHashOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
 
-import static com.tianji.auth.common.constants.JwtConstants.AUTH_PRIVILEGE_KEY;
-import static com.tianji.auth.common.constants.JwtConstants.AUTH_PRIVILEGE_VERSION_KEY;
+import static com.tianji.auth.common.constants.JwtConstants.*;
 
 @Slf4j
 @Component
@@ -30,6 +26,16 @@ public class PrivilegeCache {
     }
 
     public void initPrivilegesCache(List<PrivilegeRoleDTO> list) {
+        initPrivilegesCache(list, Collections.emptyList());
+    }
+
+    /**
+     * 写入全部权限缓存
+     *
+     * @param list       全部权限
+     * @param changedIds 实际发生变更的权限id，网关只增量加载这些权限，为空则网关全量加载
+     */
+    public void initPrivilegesCache(List<PrivilegeRoleDTO> list, Collection<Long> changedIds) {
         // 1.组装权限对应角色
         Map<String, String> map = new HashMap<>();
         for (PrivilegeRoleDTO prDTO : list) {
@@ -38,7 +44,7 @@ public class PrivilegeCache {
         // 2.写入 redis
         hashOps.putAll(map);
         // 3.版本递增
-        incrementVersion();
+        incrementVersion(changedIds);
     }
 
     public void cacheSinglePrivilege(Privilege p, Set<Long> roleIds) {
@@ -49,7 +55,7 @@ public class PrivilegeCache {
             privilegeRoleDTO.setRoles(roleIds);
             privilegeRoleDTO.setInternal(p.getInternal());
             hashOps.put(p.getId().toString(), JSONUtil.toJsonStr(privilegeRoleDTO));
-            incrementVersion();
+            incrementVersion(List.of(p.getId()));
         } catch (Exception e) {
             log.error("缓存权限信息失败。 ->", e);
             throw new RuntimeException(e);
@@ -57,18 +63,25 @@ public class PrivilegeCache {
     }
 
     public void removePrivilegeCacheById(Long id) {
-        hashOps.delete(id);
-        incrementVersion();
+        hashOps.delete(id.toString());
+        incrementVersion(List.of(id));
     }
 
     public void removePrivilegeCacheByIds(List<Long> ids) {
-        hashOps.delete(ids.toArray());
-        incrementVersion();
+        hashOps.delete(ids.stream().map(String::valueOf).toArray());
+        incrementVersion(ids);
     }
 
 
-    private void incrementVersion() {
-        stringRedisTemplate.opsForValue().increment(AUTH_PRIVILEGE_VERSION_KEY, 1);
+    private void incrementVersion(Collection<Long> changedIds) {
+        // 1.版本递增
+        Long version = stringRedisTemplate.opsForValue().increment(AUTH_PRIVILEGE_VERSION_KEY, 1);
+        // 2.通知网关增量加载，通知丢失时网关会通过定时比对版本兜底
+        StringJoiner message = new StringJoiner(",", version + ":", "");
+        for (Long id : changedIds) {
+            message.add(id.toString());
+        }
+        stringRedisTemplate.convertAndSend(AUTH_PRIVILEGE_CHANNEL, message.toString());
     }
 
     public void removeCacheByRoleId(Long id) {
@@ -89,8 +102,15 @@ public class PrivilegeCache {
                 modified.put(en.getKey(), JsonUtils.toJsonStr(prDTO));
             }
         }
+        if(modified.isEmpty()){
+            return;
+        }
         // 写回缓存
         hashOps.putAll(modified);
-        incrementVersion();
+        List<Long> changedIds = new ArrayList<>(modified.size());
+        for (String key : modified.keySet()) {
+            changedIds.add(Long.valueOf(key));
+        }
+        incrementVersion(changedIds);
     }
 }
@@ -0,0 +1,21 @@
+package com.tianji.common.autoconfigure.async;
+
+import com.tianji.common.utils.ContextSnapshot;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+
+@Configuration
+public class ContextPropagationConfig {
+
+    /**
+     * 传递线程上下文的TaskDecorator，SpringBoot默认的applicationTaskExecutor(@Async)会自动使用，
+     * 各服务自定义的ThreadPoolTaskExecutor需要在initialize之前设置
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public TaskDecorator contextTaskDecorator(){
+        return ContextSnapshot.taskDecorator();
+    }
+}
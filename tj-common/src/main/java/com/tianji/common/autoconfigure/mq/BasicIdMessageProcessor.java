@@ -9,11 +9,25 @@ import org.springframework.amqp.core.MessagePostProcessor;
 import static com.tianji.common.constants.Constant.REQUEST_ID_HEADER;
 
 public class BasicIdMessageProcessor implements MessagePostProcessor {
+
+    /**
+     * 提交消息时记录的请求id，为null时取发送线程MDC中的请求id
+     */
+    private final String requestId;
+
+    public BasicIdMessageProcessor() {
+        this(null);
+    }
+
+    public BasicIdMessageProcessor(String requestId) {
+        this.requestId = requestId;
+    }
+
     @Override
     public Message postProcessMessage(Message message) throws AmqpException {
-        String requestId = MDC.get(REQUEST_ID_HEADER);
+        String requestId = this.requestId != null ? this.requestId : MDC.get(REQUEST_ID_HEADER);
         if (requestId == null) {
-            requestId = UUID.randomUUID().toString(true);
+            requestId = UUID.fastUUID().toString(true);
         }
         // 写入RequestID标示
         message.getMessageProperties().setHeader(REQUEST_ID_HEADER, requestId);
@@ -10,6 +10,11 @@ public class DelayedMessageProcessor extends BasicIdMessageProcessor {
     private final long delay;
 
     public DelayedMessageProcessor(Duration delay) {
+        this(delay, null);
+    }
+
+    public DelayedMessageProcessor(Duration delay, String requestId) {
+        super(requestId);
         this.delay = delay.toMillis();
     }
 
@@ -3,97 +3,141 @@ package com.tianji.common.autoconfigure.mq;
 import cn.hutool.core.lang.UUID;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
+import org.springframework.amqp.AmqpException;
 import org.springframework.amqp.core.MessagePostProcessor;
 import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.beans.factory.DisposableBean;
 
 import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import static com.tianji.common.constants.Constant.REQUEST_ID_HEADER;
 
+/**
+ * rabbitmq发送工具。
+ * 异步发送的消息进入有界队列，由少量发送线程批量取出，按exchange和routingKey分组后在各自独占的channel上连续发送，
+ * 开启publisher-confirm-type: correlated时，返回的CompletableFuture在broker确认后完成，否则在消息写出后完成。
+ * 队列满时调用线程自己发送，形成背压
+ */
 @Slf4j
-public class RabbitMqHelper {
+public class RabbitMqHelper implements DisposableBean {
+
+    /**
+     * 异步发送队列的容量
+     */
+    private static final int QUEUE_CAPACITY = 10000;
+    /**
+     * 队列满时调用者最多等待的时间，超时后由调用线程自己发送
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    /**
+     * 每个发送线程一次最多取出的消息数量
+     */
+    private static final int BATCH_SIZE = 200;
+    private static final int SENDER_THREADS = 2;
+    private static final Duration CONFIRM_TIMEOUT = Duration.ofSeconds(10);
+    private static final long REPORT_INTERVAL_MILLIS = 60000;
 
     private final RabbitTemplate rabbitTemplate;
     private final MessagePostProcessor processor = new BasicIdMessageProcessor();
-    private final ThreadPoolTaskExecutor executor;
+    private final boolean confirmEnabled;
+    private final BlockingQueue<PendingMessage> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Thread> senders = new ArrayList<>(SENDER_THREADS);
+    private volatile boolean running = true;
+    /**
+     * correlationId = 实例前缀 + 自增序号，避免每条消息都生成UUID
+     */
+    private final String idPrefix = UUID.fastUUID().toString(true).substring(0, 12) + "-";
+    private final AtomicLong idSequence = new AtomicLong();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder callerRuns = new LongAdder();
+    private final LongAdder acked = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private long lastReportTime = System.currentTimeMillis();
 
     public RabbitMqHelper(RabbitTemplate rabbitTemplate) {
         this.rabbitTemplate = rabbitTemplate;
-        executor = new ThreadPoolTaskExecutor();
-        //配置核心线程数
-        executor.setCorePoolSize(10);
-        //配置最大线程数
-        executor.setMaxPoolSize(15);
-        //配置队列大小
-        executor.setQueueCapacity(99999);
-        //配置线程池中的线程的名称前缀
-        executor.setThreadNamePrefix("mq-async-send-handler");
-
-        // 设置拒绝策略：当pool已经达到max size的时候，如何处理新任务
-        // CALLER_RUNS：不在新线程中执行任务，而是有调用者所在的线程来执行
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
-        //执行初始化
-        executor.initialize();
+        this.confirmEnabled = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+        for (int i = 0; i < SENDER_THREADS; i++) {
+            Thread t = new Thread(this::runSender, "mq-async-sender-" + i);
+            t.setDaemon(true);
+            senders.add(t);
+        }
+        senders.forEach(Thread::start);
     }
 
     /**
-     * 根据exchange和routingKey发送消息
+     * 根据exchange和routingKey发送消息，消息在调用线程发送，发送失败直接抛出异常，交给调用者处理
+     *
+     * @return broker的确认结果，nack或确认超时时异常完成
      */
-    public <T> void send(String exchange, String routingKey, T t) {
+    public <T> CompletableFuture<Void> send(String exchange, String routingKey, T t) {
         log.debug("准备发送消息，exchange：{}， RoutingKey：{}， message：{}", exchange, routingKey, t);
-        // 1.设置消息标示，用于消息确认，消息发送失败直接抛出异常，交给调用者处理
-        String id = UUID.randomUUID().toString(true);
-        CorrelationData correlationData = new CorrelationData(id);
-        // 2.设置发送超时时间为500毫秒
-        rabbitTemplate.setReplyTimeout(500);
-        // 3.发送消息，同时设置消息id
+        // 1.设置消息标示，用于消息确认
+        CorrelationData correlationData = new CorrelationData(nextId());
+        // 2.发送消息，同时设置消息id
         rabbitTemplate.convertAndSend(exchange, routingKey, t, processor, correlationData);
+        // 3.等待确认
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        awaitConfirm(correlationData, future);
+        return future;
     }
 
     /**
      * 根据exchange和routingKey发送消息，并且可以设置延迟时间
+     *
+     * @return broker的确认结果，nack或确认超时时异常完成
      */
-    public <T> void sendDelayMessage(String exchange, String routingKey, T t, Duration delay) {
-        // 1.设置消息标示，用于消息确认，消息发送失败直接抛出异常，交给调用者处理
-        String id = UUID.randomUUID().toString(true);
-        CorrelationData correlationData = new CorrelationData(id);
-        // 2.设置发送超时时间为500毫秒
-        rabbitTemplate.setReplyTimeout(500);
-        // 3.发送消息，同时设置消息id
+    public <T> CompletableFuture<Void> sendDelayMessage(String exchange, String routingKey, T t, Duration delay) {
+        // 1.设置消息标示，用于消息确认
+        CorrelationData correlationData = new CorrelationData(nextId());
+        // 2.发送消息，同时设置消息id
         rabbitTemplate.convertAndSend(exchange, routingKey, t, new DelayedMessageProcessor(delay), correlationData);
+        // 3.等待确认
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        awaitConfirm(correlationData, future);
+        return future;
     }
 
-
     /**
      * 根据exchange和routingKey 异步发送消息，并指定一个延迟时间
      *
      * @param exchange   交换机
      * @param routingKey 路由KEY
      * @param t          数据
+     * @param time       延迟时间，毫秒，为null或不大于0时不延迟
      * @param <T>        数据类型
+     * @return broker的确认结果，发送失败、nack或确认超时时异常完成
      */
-    public <T> void sendAsync(String exchange, String routingKey, T t, Long time) {
+    public <T> CompletableFuture<Void> sendAsync(String exchange, String routingKey, T t, Long time) {
+        // 1.记录请求id，发送线程写入消息头
         String requestId = MDC.get(REQUEST_ID_HEADER);
-        CompletableFuture.runAsync(() -> {
-            try {
-                MDC.put(REQUEST_ID_HEADER, requestId);
-                // 发送延迟消息
-                if (time != null && time > 0) {
-                    sendDelayMessage(exchange, routingKey, t, Duration.ofMillis(time));
-                } else {
-                    send(exchange, routingKey, t);
-                }
-            } catch (Exception e) {
-                log.error("推送消息异常，t:{},", t, e);
+        MessagePostProcessor postProcessor = time != null && time > 0 ?
+                new DelayedMessageProcessor(Duration.ofMillis(time), requestId) : new BasicIdMessageProcessor(requestId);
+        PendingMessage message = new PendingMessage(exchange, routingKey, t, postProcessor);
+        submitted.increment();
+        // 2.放入发送队列
+        try {
+            if (queue.offer(message, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return message.future;
             }
-        }, executor);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 3.队列已满，由调用线程发送
+        callerRuns.increment();
+        log.warn("异步发送队列已满，由调用线程发送消息，exchange：{}， RoutingKey：{}", exchange, routingKey);
+        publish(List.of(message));
+        return message.future;
     }
 
-
     /**
      * 根据exchange和routingKey 异步发送消息
      *
@@ -101,9 +145,149 @@ public class RabbitMqHelper {
      * @param routingKey 路由KEY
      * @param t          数据
      * @param <T>        数据类型
+     * @return broker的确认结果，发送失败、nack或确认超时时异常完成
      */
-    public <T> void sendAsync(String exchange, String routingKey, T t) {
-        sendAsync(exchange, routingKey, t, null);
+    public <T> CompletableFuture<Void> sendAsync(String exchange, String routingKey, T t) {
+        return sendAsync(exchange, routingKey, t, null);
+    }
+
+    /**
+     * 等待发送的消息数量
+     */
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        // 停止接收新任务，发送线程发完队列中剩余的消息后退出
+        running = false;
+        for (Thread sender : senders) {
+            sender.join(5000);
+        }
     }
 
+    private void runSender() {
+        List<PendingMessage> batch = new ArrayList<>(BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            try {
+                // 1.等待消息，有消息时一次取出一批
+                PendingMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+                    // 2.发送
+                    publish(batch);
+                }
+                reportMetrics();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("异步发送消息异常", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publish(List<PendingMessage> batch) {
+        // 1.按exchange和routingKey分组，同组消息连续发送，组内保持提交顺序
+        Map<String, List<PendingMessage>> groups = new LinkedHashMap<>();
+        for (PendingMessage m : batch) {
+            groups.computeIfAbsent(m.exchange + "#" + m.routingKey, k -> new ArrayList<>()).add(m);
+        }
+        // 2.整批消息在当前线程独占的channel上发送，不必每条消息都从缓存中取还channel
+        try {
+            rabbitTemplate.invoke(ops -> {
+                for (List<PendingMessage> group : groups.values()) {
+                    for (PendingMessage m : group) {
+                        CorrelationData correlationData = new CorrelationData(nextId());
+                        try {
+                            ops.convertAndSend(m.exchange, m.routingKey, m.payload, m.processor, correlationData);
+                        } catch (AmqpException e) {
+                            fail(m, e);
+                            continue;
+                        }
+                        m.sent = true;
+                        awaitConfirm(correlationData, m.future);
+                    }
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            // 获取或关闭channel失败，还没有发出的消息直接失败，已发出的等待确认结果
+            for (PendingMessage m : batch) {
+                if (!m.sent) {
+                    fail(m, e);
+                }
+            }
+        }
+    }
+
+    private void awaitConfirm(CorrelationData correlationData, CompletableFuture<Void> future) {
+        // 1.未开启发送确认，消息写出即完成
+        if (!confirmEnabled) {
+            acked.increment();
+            future.complete(null);
+            return;
+        }
+        // 2.等待broker确认，channel关闭时未确认的消息会收到nack
+        correlationData.getFuture()
+                .orTimeout(CONFIRM_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((confirm, e) -> {
+                    if (e != null) {
+                        failed.increment();
+                        future.completeExceptionally(e);
+                    } else if (!confirm.isAck()) {
+                        failed.increment();
+                        future.completeExceptionally(new AmqpException("消息未被broker确认：" + confirm.getReason()));
+                    } else {
+                        acked.increment();
+                        future.complete(null);
+                    }
+                });
+    }
+
+    private void fail(PendingMessage m, Exception e) {
+        if (m.future.completeExceptionally(e)) {
+            failed.increment();
+            log.error("推送消息异常，t:{},", m.payload, e);
+        }
+    }
+
+    private String nextId() {
+        return idPrefix + idSequence.incrementAndGet();
+    }
+
+    private void reportMetrics() {
+        // 只由第一个发送线程输出
+        long now = System.currentTimeMillis();
+        if (Thread.currentThread() != senders.get(0) || now - lastReportTime < REPORT_INTERVAL_MILLIS) {
+            return;
+        }
+        lastReportTime = now;
+        long total = submitted.sumThenReset();
+        if (total == 0 && queue.isEmpty()) {
+            return;
+        }
+        log.info("异步发送消息数量：{}，调用线程发送：{}，确认成功：{}，失败：{}，队列积压：{}",
+                total, callerRuns.sumThenReset(), acked.sumThenReset(), failed.sumThenReset(), queue.size());
+    }
+
+    private static class PendingMessage {
+        private final String exchange;
+        private final String routingKey;
+        private final Object payload;
+        private final MessagePostProcessor processor;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private boolean sent;
+
+        private PendingMessage(String exchange, String routingKey, Object payload, MessagePostProcessor processor) {
+            this.exchange = exchange;
+            this.routingKey = routingKey;
+            this.payload = payload;
+            this.processor = processor;
+        }
+    }
 }
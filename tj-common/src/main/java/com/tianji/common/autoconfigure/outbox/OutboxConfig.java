@@ -0,0 +1,54 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.mapper.MapperFactoryBean;
+import org.redisson.api.RedissonClient;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * outbox配置。OutboxPublisher始终可用，开启tj.outbox.enabled后才写入outbox表并启动OutboxRelay。
+ * 开启步骤：1.在服务的数据库中执行tj-common的sql/outbox.sql；2.配置tj.outbox.enabled=true
+ */
+@Configuration
+@ConditionalOnClass({BaseMapper.class, RabbitTemplate.class})
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxConfig {
+
+    /**
+     * outbox表的Mapper，不在各服务的MapperScan范围内，单独注册
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "tj.outbox", name = "enabled", havingValue = "true")
+    public MapperFactoryBean<OutboxMapper> outboxMapper(SqlSessionFactory sqlSessionFactory) {
+        MapperFactoryBean<OutboxMapper> factoryBean = new MapperFactoryBean<>(OutboxMapper.class);
+        factoryBean.setSqlSessionFactory(sqlSessionFactory);
+        return factoryBean;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "tj.outbox", name = "enabled", havingValue = "true")
+    public OutboxRelay outboxRelay(OutboxMapper outboxMapper, RabbitTemplate rabbitTemplate,
+                                   ObjectProvider<RedissonClient> redissonClient,
+                                   OutboxProperties properties, Environment environment) {
+        return new OutboxRelay(outboxMapper, rabbitTemplate, redissonClient.getIfAvailable(),
+                properties, environment.getProperty("spring.application.name"));
+    }
+
+    @Bean
+    public OutboxPublisher outboxPublisher(ObjectProvider<OutboxMapper> outboxMapper, MessageConverter messageConverter,
+                                           ObjectProvider<OutboxRelay> outboxRelay, OutboxProperties properties,
+                                           RabbitMqHelper rabbitMqHelper) {
+        return new OutboxPublisher(outboxMapper.getIfAvailable(), messageConverter, outboxRelay.getIfAvailable(),
+                properties, rabbitMqHelper);
+    }
+}
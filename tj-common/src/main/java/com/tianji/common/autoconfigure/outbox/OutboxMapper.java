@@ -0,0 +1,20 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+public interface OutboxMapper extends BaseMapper<OutboxMessage> {
+
+    @Select("SELECT * FROM outbox WHERE shard = #{shard} AND next_time <= #{now} ORDER BY next_time LIMIT #{limit}")
+    List<OutboxMessage> queryPending(@Param("shard") int shard, @Param("now") LocalDateTime now, @Param("limit") int limit);
+
+    @Update("<script>UPDATE outbox SET retry_times = retry_times + 1, next_time = #{nextTime} WHERE id IN " +
+            "<foreach collection='ids' item='id' open='(' separator=',' close=')'>#{id}</foreach></script>")
+    int delayRetry(@Param("ids") Collection<Long> ids, @Param("nextTime") LocalDateTime nextTime);
+}
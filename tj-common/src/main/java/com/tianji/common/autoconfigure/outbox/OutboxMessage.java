@@ -0,0 +1,43 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 待发送的MQ消息，与业务数据在同一个事务中写入，发送并被broker确认后删除
+ */
+@Data
+@TableName("outbox")
+public class OutboxMessage {
+
+    @TableId(value = "id", type = IdType.ASSIGN_ID)
+    private Long id;
+    /**
+     * 分片，决定由哪个发送线程发送
+     */
+    private Integer shard;
+    private String exchange;
+    private String routingKey;
+    /**
+     * 消息体，MessageConverter序列化的结果
+     */
+    private String body;
+    /**
+     * 消息头，JSON格式，包含类型信息、请求id、延迟时间
+     */
+    private String headers;
+    private String contentType;
+    /**
+     * 已重试次数
+     */
+    private Integer retryTimes;
+    /**
+     * 下次发送时间
+     */
+    private LocalDateTime nextTime;
+    private LocalDateTime createTime;
+}
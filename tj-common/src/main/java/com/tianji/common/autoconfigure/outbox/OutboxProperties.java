@@ -0,0 +1,25 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "tj.outbox")
+public class OutboxProperties {
+    /*是否开启，开启前需要在服务的数据库中创建outbox表，见sql/outbox.sql。未开启时同步发送并等待broker确认*/
+    private Boolean enabled = false;
+    /*分片数量，消息写入时随机分配分片，每个分片同一时刻只由一个实例发送。调小前需要先发完多出的分片中的消息*/
+    private int shards = 8;
+    /*每个实例的发送线程数，按分片取模分配*/
+    private int workers = 2;
+    /*每个分片一次发送的最大消息数量*/
+    private int batchSize = 200;
+    /*没有待发送消息时的轮询间隔，事务提交后会立即唤醒发送线程*/
+    private Duration pollInterval = Duration.ofSeconds(1);
+    /*等待broker确认的超时时间*/
+    private Duration confirmTimeout = Duration.ofSeconds(10);
+    /*发送失败后重试的最大间隔*/
+    private Duration maxRetryInterval = Duration.ofMinutes(10);
+}
@@ -0,0 +1,112 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import com.tianji.common.autoconfigure.mq.BasicIdMessageProcessor;
+import com.tianji.common.autoconfigure.mq.DelayedMessageProcessor;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.utils.JsonUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessagePostProcessor;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.support.converter.MessageConverter;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 基于outbox表的可靠消息发送工具。
+ * 消息与业务数据在同一个事务中写入outbox表，事务提交后由OutboxRelay发送，事务回滚则消息不会发出，
+ * 请求线程不需要等待broker，broker异常时消息也不会丢失。
+ * 未开启tj.outbox.enabled时，在调用线程中同步发送并等待broker确认，失败时抛出异常，由调用者的事务回滚或补偿
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class OutboxPublisher {
+
+    /**
+     * 未开启outbox时为null
+     */
+    private final OutboxMapper outboxMapper;
+    private final MessageConverter messageConverter;
+    /**
+     * 未开启outbox时为null
+     */
+    private final OutboxRelay relay;
+    private final OutboxProperties properties;
+    private final RabbitMqHelper mqHelper;
+
+    /**
+     * 根据exchange和routingKey发送消息，需要在业务事务中调用
+     */
+    public <T> void publish(String exchange, String routingKey, T t) {
+        publish(exchange, routingKey, t, null);
+    }
+
+    /**
+     * 根据exchange和routingKey发送消息，并且可以设置延迟时间，需要在业务事务中调用
+     */
+    public <T> void publish(String exchange, String routingKey, T t, Duration delay) {
+        if (outboxMapper == null) {
+            sendAndAwait(exchange, routingKey, t, delay);
+            return;
+        }
+        log.debug("写入outbox消息，exchange：{}， RoutingKey：{}， message：{}", exchange, routingKey, t);
+        // 1.序列化消息，同时写入请求id和延迟时间
+        MessagePostProcessor processor = delay == null ? new BasicIdMessageProcessor() : new DelayedMessageProcessor(delay);
+        Message message = processor.postProcessMessage(messageConverter.toMessage(t, new MessageProperties()));
+        MessageProperties props = message.getMessageProperties();
+        // 2.写入outbox表
+        LocalDateTime now = LocalDateTime.now();
+        OutboxMessage m = new OutboxMessage();
+        m.setShard(ThreadLocalRandom.current().nextInt(properties.getShards()));
+        m.setExchange(exchange);
+        m.setRoutingKey(routingKey);
+        m.setBody(new String(message.getBody(), StandardCharsets.UTF_8));
+        m.setHeaders(JsonUtils.toJsonStr(props.getHeaders()));
+        m.setContentType(props.getContentType());
+        m.setRetryTimes(0);
+        m.setNextTime(now);
+        m.setCreateTime(now);
+        outboxMapper.insert(m);
+        // 3.事务提交后唤醒发送线程
+        afterCommit(relay::wakeUp);
+    }
+
+    /**
+     * 同步发送并等待broker确认，发送失败、nack或确认超时时抛出AmqpException
+     */
+    private <T> void sendAndAwait(String exchange, String routingKey, T t, Duration delay) {
+        CompletableFuture<Void> confirm = delay == null ?
+                mqHelper.send(exchange, routingKey, t) : mqHelper.sendDelayMessage(exchange, routingKey, t, delay);
+        try {
+            confirm.join();
+        } catch (CompletionException e) {
+            log.error("消息发送失败，exchange：{}， RoutingKey：{}， message：{}", exchange, routingKey, t, e.getCause());
+            if (e.getCause() instanceof AmqpException) {
+                throw (AmqpException) e.getCause();
+            }
+            throw new AmqpException("消息未被broker确认", e.getCause());
+        }
+    }
+
+    private void afterCommit(Runnable task) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            task.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                task.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,256 @@
+package com.tianji.common.autoconfigure.outbox;
+
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.common.utils.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.core.Message;
+import org.springframework.amqp.core.MessageProperties;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * outbox消息的发送器。
+ * 每个实例启动若干发送线程，按分片取模分配，每个分片先抢占Redis锁，保证同一时刻只有一个实例发送，
+ * 多个实例共同分担所有分片。一批消息在同一个channel上连续发送，全部等待broker确认后，
+ * 删除已确认的消息，未确认的消息延迟重试，因此消息至少投递一次，消费者可以根据messageId(即outbox的id)去重
+ */
+@Slf4j
+public class OutboxRelay implements InitializingBean, DisposableBean {
+
+    private static final String LOCK_KEY_TEMPLATE = "outbox:relay:{}:{}";
+    private static final long REPORT_INTERVAL_MILLIS = 60000;
+
+    private final OutboxMapper outboxMapper;
+    private final RabbitTemplate rabbitTemplate;
+    /**
+     * 没有Redisson时不抢占分片，只适合单实例部署
+     */
+    private final RedissonClient redissonClient;
+    private final OutboxProperties properties;
+    private final String appName;
+    private final boolean confirmEnabled;
+    private final Object signal = new Object();
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    // 监控指标：发送成功的消息数、失败的消息数、发送批次
+    private final LongAdder relayed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private long lastReportTime = System.currentTimeMillis();
+
+    public OutboxRelay(OutboxMapper outboxMapper, RabbitTemplate rabbitTemplate, RedissonClient redissonClient,
+                       OutboxProperties properties, String appName) {
+        this.outboxMapper = outboxMapper;
+        this.rabbitTemplate = rabbitTemplate;
+        this.redissonClient = redissonClient;
+        this.properties = properties;
+        this.appName = appName;
+        this.confirmEnabled = rabbitTemplate.getConnectionFactory().isPublisherConfirms();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (!confirmEnabled) {
+            log.warn("未开启publisher-confirm-type: correlated，outbox消息写出后即删除，broker异常时可能丢失");
+        }
+        for (int i = 0; i < properties.getWorkers(); i++) {
+            int index = i;
+            Thread t = new Thread(() -> runWorker(index), "outbox-relay-" + i);
+            t.setDaemon(true);
+            workers.add(t);
+        }
+        workers.forEach(Thread::start);
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        wakeUp();
+        for (Thread worker : workers) {
+            worker.join(5000);
+        }
+    }
+
+    /**
+     * 唤醒发送线程，事务提交后调用，消息可以尽快发出
+     */
+    public void wakeUp() {
+        synchronized (signal) {
+            signal.notifyAll();
+        }
+    }
+
+    private void runWorker(int index) {
+        while (running && !Thread.currentThread().isInterrupted()) {
+            // 1.依次处理分配给当前线程的分片
+            boolean busy = false;
+            for (int shard = index; shard < properties.getShards(); shard += properties.getWorkers()) {
+                try {
+                    busy |= relayShard(shard);
+                } catch (Exception e) {
+                    log.error("outbox消息发送异常，分片：{}", shard, e);
+                }
+            }
+            if (index == 0) {
+                reportMetrics();
+            }
+            // 2.所有分片都没有积压，等待唤醒或下一轮轮询
+            if (!busy) {
+                await();
+            }
+        }
+    }
+
+    /**
+     * 发送一个分片中的一批到期消息
+     *
+     * @return 是否还有积压的消息
+     */
+    private boolean relayShard(int shard) {
+        // 1.抢占分片，其它实例正在发送时跳过
+        RLock lock = null;
+        if (redissonClient != null) {
+            lock = redissonClient.getLock(StringUtils.format(LOCK_KEY_TEMPLATE, appName, shard));
+            if (!lock.tryLock()) {
+                return false;
+            }
+        }
+        try {
+            // 2.查询到期的消息
+            List<OutboxMessage> list = outboxMapper.queryPending(shard, LocalDateTime.now(), properties.getBatchSize());
+            if (list.isEmpty()) {
+                return false;
+            }
+            // 3.发送
+            publish(list);
+            return list.size() >= properties.getBatchSize();
+        } finally {
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void publish(List<OutboxMessage> list) {
+        batches.increment();
+        // 1.整批消息在当前线程独占的channel上连续发送
+        List<CorrelationData> confirms = new ArrayList<>(list.size());
+        try {
+            rabbitTemplate.invoke(ops -> {
+                for (OutboxMessage m : list) {
+                    CorrelationData correlationData = new CorrelationData(m.getId().toString());
+                    ops.send(m.getExchange(), m.getRoutingKey(), toMessage(m), correlationData);
+                    confirms.add(correlationData);
+                }
+                return null;
+            });
+        } catch (AmqpException e) {
+            // 已发出的消息也一起重试，由消费者去重
+            log.error("outbox消息发送失败，数量：{}", list.size(), e);
+            retryLater(list);
+            return;
+        }
+        // 2.等待broker确认，所有消息共用一个超时时间
+        List<Long> ackIds = new ArrayList<>(list.size());
+        List<OutboxMessage> nacks = new ArrayList<>();
+        long deadline = System.nanoTime() + properties.getConfirmTimeout().toNanos();
+        for (int i = 0; i < list.size(); i++) {
+            OutboxMessage m = list.get(i);
+            if (!confirmEnabled || isAck(confirms.get(i), deadline)) {
+                ackIds.add(m.getId());
+            } else {
+                nacks.add(m);
+            }
+        }
+        // 3.删除已确认的消息，未确认的延迟重试
+        if (!ackIds.isEmpty()) {
+            outboxMapper.deleteBatchIds(ackIds);
+            relayed.add(ackIds.size());
+        }
+        if (!nacks.isEmpty()) {
+            log.warn("outbox消息未被broker确认，数量：{}", nacks.size());
+            retryLater(nacks);
+        }
+    }
+
+    private boolean isAck(CorrelationData correlationData, long deadline) {
+        try {
+            CorrelationData.Confirm confirm = correlationData.getFuture()
+                    .get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+            return confirm.isAck();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | TimeoutException e) {
+            return false;
+        }
+    }
+
+    private void retryLater(List<OutboxMessage> list) {
+        failed.add(list.size());
+        // 按重试次数分组，重试间隔翻倍，最大不超过maxRetryInterval
+        Map<Integer, List<Long>> groups = new HashMap<>();
+        for (OutboxMessage m : list) {
+            groups.computeIfAbsent(m.getRetryTimes(), k -> new ArrayList<>()).add(m.getId());
+        }
+        LocalDateTime now = LocalDateTime.now();
+        long maxSeconds = properties.getMaxRetryInterval().getSeconds();
+        groups.forEach((retryTimes, ids) -> {
+            long seconds = retryTimes >= 30 ? maxSeconds : Math.min(1L << retryTimes, maxSeconds);
+            outboxMapper.delayRetry(ids, now.plusSeconds(seconds));
+        });
+    }
+
+    private Message toMessage(OutboxMessage m) {
+        MessageProperties props = new MessageProperties();
+        props.setContentType(m.getContentType());
+        props.setContentEncoding(StandardCharsets.UTF_8.name());
+        // 重试时messageId不变，消费者据此去重
+        props.setMessageId(m.getId().toString());
+        if (StringUtils.isNotBlank(m.getHeaders())) {
+            props.getHeaders().putAll(JsonUtils.parseObj(m.getHeaders()));
+        }
+        return new Message(m.getBody().getBytes(StandardCharsets.UTF_8), props);
+    }
+
+    private void await() {
+        synchronized (signal) {
+            try {
+                signal.wait(properties.getPollInterval().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void reportMetrics() {
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastReportTime;
+        if (elapsed < REPORT_INTERVAL_MILLIS) {
+            return;
+        }
+        lastReportTime = now;
+        long count = relayed.sumThenReset();
+        long failedCount = failed.sumThenReset();
+        long batchCount = batches.sumThenReset();
+        if (count == 0 && failedCount == 0) {
+            return;
+        }
+        log.info("outbox消息发送速率：{}条/秒，发送成功：{}，失败：{}，批次：{}",
+                count * 1000 / elapsed, count, failedCount, batchCount);
+    }
+}
@@ -11,6 +11,9 @@ public interface MqConstants {
         /*学习有关的交换机*/
         String LEARNING_EXCHANGE = "learning.topic";
 
+        /*用户有关的交换机*/
+        String USER_EXCHANGE = "user.topic";
+
         /*信息中心短信相关的交换机*/
         String SMS_EXCHANGE = "sms.direct";
 
@@ -39,6 +42,9 @@ public interface MqConstants {
         String COURSE_EXPIRE_KEY = "course.expire";
         String COURSE_DELETE_KEY = "course.delete";
 
+        /*用户信息变更的RoutingKey*/
+        String USER_UPDATED_KEY = "user.updated";
+
         /*订单有关的RoutingKey*/
         String ORDER_PAY_KEY = "order.pay";
         String ORDER_REFUND_KEY = "order.refund";
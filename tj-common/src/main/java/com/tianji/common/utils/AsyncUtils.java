@@ -0,0 +1,100 @@
+package com.tianji.common.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 并行执行互不依赖的远程调用，页面耗时由各调用耗时之和变为最大值。
+ * 任务执行时会带上调用线程的上下文(UserContext、MDC请求id等，见ContextSnapshot)，远程调用才能传递用户和请求id。
+ * JDK21及以上使用虚拟线程，否则使用有界线程池，队列满时由调用线程执行。
+ */
+@Slf4j
+public class AsyncUtils {
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    /**
+     * 异步执行任务，超时或异常时返回兜底值
+     *
+     * @param supplier 任务
+     * @param timeout  超时时间
+     * @param fallback 超时或异常时的兜底值
+     * @return 任务结果
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> supplier, Duration timeout, T fallback) {
+        return CompletableFuture.supplyAsync(wrap(supplier), EXECUTOR)
+                .completeOnTimeout(fallback, timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    log.error("异步任务执行失败，使用兜底数据", e);
+                    return fallback;
+                });
+    }
+
+    /**
+     * 异步执行任务，异常原样抛给join的调用者
+     *
+     * @param supplier 任务
+     * @return 任务结果
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(wrap(supplier), EXECUTOR);
+    }
+
+    /**
+     * 等待任务结果，任务失败时抛出原始异常
+     */
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 包装任务，执行时带上当前线程的上下文，执行后恢复执行线程原有的数据
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> supplier) {
+        return ContextSnapshot.capture().wrap(supplier);
+    }
+
+    /**
+     * 包装任务，执行时带上当前线程的上下文，执行后恢复执行线程原有的数据
+     */
+    public static Runnable wrap(Runnable runnable) {
+        return ContextSnapshot.capture().wrap(runnable);
+    }
+
+    private static ExecutorService createExecutor() {
+        // 1.JDK21及以上，使用虚拟线程
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // 不支持虚拟线程
+        }
+        // 2.有界线程池
+        AtomicInteger index = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                16,
+                64,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(1000),
+                r -> {
+                    Thread t = new Thread(r, "async-utils-" + index.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+    }
+}
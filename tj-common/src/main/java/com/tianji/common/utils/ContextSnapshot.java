@@ -0,0 +1,171 @@
+package com.tianji.common.utils;
+
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * 线程上下文快照。提交任务时在当前线程捕获各个ThreadLocal上下文(UserContext、MDC以及各服务注册的上下文)，
+ * 任务执行时在执行线程恢复，执行完毕再还原执行线程原有的数据。
+ * 不依赖InheritableThreadLocal，线程池、虚拟线程都适用，上下文换成ScopedValue时只需替换对应的Accessor。
+ */
+public final class ContextSnapshot {
+
+    private static final List<Accessor<Object>> ACCESSORS = new CopyOnWriteArrayList<>();
+    private static final TaskDecorator TASK_DECORATOR = runnable -> capture().wrap(runnable);
+
+    static {
+        register(new Accessor<Long>() {
+            @Override
+            public Long get() {
+                return UserContext.getUser();
+            }
+
+            @Override
+            public void set(Long value) {
+                UserContext.setUser(value);
+            }
+
+            @Override
+            public void remove() {
+                UserContext.removeUser();
+            }
+        });
+        register(new Accessor<Map<String, String>>() {
+            @Override
+            public Map<String, String> get() {
+                return MDC.getCopyOfContextMap();
+            }
+
+            @Override
+            public void set(Map<String, String> value) {
+                MDC.setContextMap(value);
+            }
+
+            @Override
+            public void remove() {
+                MDC.clear();
+            }
+        });
+    }
+
+    private final Object[] values;
+
+    private ContextSnapshot(Object[] values) {
+        this.values = values;
+    }
+
+    /**
+     * 注册需要传递的线程上下文
+     *
+     * @param accessor 上下文的读写方式
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> void register(Accessor<T> accessor) {
+        ACCESSORS.add((Accessor<Object>) accessor);
+    }
+
+    /**
+     * 捕获当前线程的上下文
+     */
+    public static ContextSnapshot capture() {
+        Object[] values = new Object[ACCESSORS.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ACCESSORS.get(i).get();
+        }
+        return new ContextSnapshot(values);
+    }
+
+    /**
+     * 传递上下文的TaskDecorator，用于ThreadPoolTaskExecutor
+     */
+    public static TaskDecorator taskDecorator() {
+        return TASK_DECORATOR;
+    }
+
+    /**
+     * 包装线程池，提交的任务都会传递提交线程的上下文
+     */
+    public static Executor wrapExecutor(Executor executor) {
+        return runnable -> executor.execute(capture().wrap(runnable));
+    }
+
+    public Runnable wrap(Runnable runnable) {
+        return () -> {
+            Object[] previous = restore();
+            try {
+                runnable.run();
+            } finally {
+                reset(previous);
+            }
+        };
+    }
+
+    public <T> Supplier<T> wrap(Supplier<T> supplier) {
+        return () -> {
+            Object[] previous = restore();
+            try {
+                return supplier.get();
+            } finally {
+                reset(previous);
+            }
+        };
+    }
+
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        return () -> {
+            Object[] previous = restore();
+            try {
+                return callable.call();
+            } finally {
+                reset(previous);
+            }
+        };
+    }
+
+    /**
+     * 在当前线程恢复快照中的上下文
+     *
+     * @return 当前线程原有的上下文
+     */
+    private Object[] restore() {
+        Object[] previous = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            Accessor<Object> accessor = ACCESSORS.get(i);
+            previous[i] = accessor.get();
+            apply(accessor, values[i]);
+        }
+        return previous;
+    }
+
+    private void reset(Object[] previous) {
+        for (int i = 0; i < previous.length; i++) {
+            apply(ACCESSORS.get(i), previous[i]);
+        }
+    }
+
+    private static void apply(Accessor<Object> accessor, Object value) {
+        if (value == null) {
+            accessor.remove();
+        } else {
+            accessor.set(value);
+        }
+    }
+
+    /**
+     * 一种线程上下文的读写方式
+     */
+    public interface Accessor<T> {
+        T get();
+
+        void set(T value);
+
+        void remove();
+    }
+}
@@ -0,0 +1,15 @@
+-- 开启tj.outbox.enabled的服务，需要在各自的数据库中创建该表
+CREATE TABLE IF NOT EXISTS `outbox` (
+  `id` bigint NOT NULL COMMENT '主键，同时作为消息id',
+  `shard` int NOT NULL COMMENT '分片',
+  `exchange` varchar(128) NOT NULL COMMENT '交换机',
+  `routing_key` varchar(128) NOT NULL COMMENT 'RoutingKey',
+  `body` mediumtext NOT NULL COMMENT '消息体',
+  `headers` varchar(1024) DEFAULT NULL COMMENT '消息头，JSON格式',
+  `content_type` varchar(64) DEFAULT NULL COMMENT '消息体类型',
+  `retry_times` int NOT NULL DEFAULT '0' COMMENT '已重试次数',
+  `next_time` datetime NOT NULL COMMENT '下次发送时间',
+  `create_time` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_shard_next_time` (`shard`, `next_time`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='待发送的MQ消息';
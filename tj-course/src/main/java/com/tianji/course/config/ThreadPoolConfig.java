@@ -1,5 +1,6 @@
 package com.tianji.course.config;
 
+import com.tianji.common.utils.ContextSnapshot;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -28,6 +29,8 @@ public class ThreadPoolConfig {
         // 设置拒绝策略：当pool已经达到max size的时候，如何处理新任务
         // CALLER_RUNS：不在新线程中执行任务，而是有调用者所在的线程来执行
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        //传递用户等线程上下文
+        executor.setTaskDecorator(ContextSnapshot.taskDecorator());
         //执行初始化
         executor.initialize();
         return executor;
@@ -5,10 +5,10 @@ import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.exam.ExamClient;
 import com.tianji.api.client.learning.LearningClient;
 import com.tianji.api.client.trade.TradeClient;
-import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.course.CourseDTO;
 import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
 import com.tianji.api.dto.exam.QuestionBizDTO;
@@ -88,7 +88,7 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
     private CourseCataSubjectDraftMapper courseCataSubjectDraftMapper;
 
     @Autowired
-    private UserClient userClient;
+    private UserCache userCache;
 
     @Autowired
     private ICategoryService categoryService;
@@ -259,7 +259,7 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
         }
 
         //3.查询创建者，更新者姓名
-        List<UserDTO> userDTOS = userClient.queryUserByIds(
+        List<UserDTO> userDTOS = userCache.queryUserByIds(
                 Arrays.asList(courseBaseInfoVO.getCreater(), courseBaseInfoVO.getUpdater())
                         .stream()
                         .distinct()
@@ -576,7 +576,7 @@ public class CourseDraftServiceImpl extends ServiceImpl<CourseDraftMapper, Cours
                 .map(CourseDraft::getUpdater)
                 .collect(Collectors.toList());
         //2.2.查询更新人用户信息
-        List<UserDTO> userDTOS = userClient.queryUserByIds(updaterList);
+        List<UserDTO> userDTOS = userCache.queryUserByIds(updaterList);
         //2.3.转化更新人用户id+name 映射关系
         Map<Long, String> updaterMap =
                 CollUtils.isEmpty(updaterList) ?
@@ -4,16 +4,16 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.exam.ExamClient;
 import com.tianji.api.client.learning.LearningClient;
 import com.tianji.api.client.trade.TradeClient;
-import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.api.dto.course.*;
 import com.tianji.api.dto.leanring.LearningLessonDTO;
 import com.tianji.api.dto.leanring.LearningRecordDTO;
 import com.tianji.api.dto.user.UserDTO;
-import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.autoconfigure.outbox.OutboxPublisher;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
@@ -41,8 +41,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -57,6 +59,11 @@ import java.util.stream.Collectors;
 @Slf4j
 public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> implements ICourseService {
 
+    /**
+     * 列表页远程调用的超时时间，超时后使用兜底数据
+     */
+    private static final Duration REMOTE_CALL_TIMEOUT = Duration.ofSeconds(2);
+
     @Autowired
     private CourseTeacherMapper courseTeacherMapper;
 
@@ -67,7 +74,7 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     private ICourseDraftService courseDraftService;
 
     @Autowired
-    private RabbitMqHelper rabbitMqHelper;
+    private OutboxPublisher outboxPublisher;
 
     @Autowired
     private ICourseCatalogueService courseCatalogueService;
@@ -79,7 +86,7 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     private ICategoryService categoryService;
 
     @Autowired
-    private UserClient userClient;
+    private UserCache userCache;
 
     @Autowired
     private TradeClient tradeClient;
@@ -155,11 +162,12 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     }
 
     @Override
+    @Transactional(propagation = Propagation.REQUIRED, rollbackFor = Exception.class)
     public void delete(Long id) {
         //1.删除草稿信息
         courseDraftService.delete(id);
-        //2.发送删除草稿mq
-        rabbitMqHelper.send(MqConstants.Exchange.COURSE_EXCHANGE, MqConstants.Key.COURSE_DELETE_KEY, id);
+        //2.发送删除草稿mq，与删除草稿在同一事务中写入outbox
+        outboxPublisher.publish(MqConstants.Exchange.COURSE_EXCHANGE, MqConstants.Key.COURSE_DELETE_KEY, id);
     }
 
     @Override
@@ -254,7 +262,7 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
         vo.setSections(course.getSectionNum());
         vo.setCoverUrl(course.getCoverUrl());
         // 4.查询教师信息
-        List<UserDTO> teachers = userClient.queryUserByIds(course.getTeacherIds());
+        List<UserDTO> teachers = userCache.queryUserByIds(course.getTeacherIds());
         if (CollUtils.isNotEmpty(teachers)) {
             UserDTO teacher = teachers.get(0);
             vo.setTeacherName(teacher.getName());
@@ -472,31 +480,36 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
                 .stream()
                 .map(Course::getUpdater)
                 .collect(Collectors.toList());
-        //2.1查询更新人用户信息
-        List<UserDTO> userDTOS = userClient.queryUserByIds(updaterList);
-        //2.2.转化课程更新人id+name map
-        Map<Long, String> updaterMap =
-                CollUtils.isEmpty(updaterList) ?
-                        new HashMap<>()
-                        : userDTOS
-                        .stream()
-                        .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
-        //3.获取所有课程分类信息
+        //2.1.异步查询更新人用户信息
+        CompletableFuture<List<UserDTO>> userFuture = AsyncUtils.supply(
+                () -> userCache.queryUserByIds(updaterList), REMOTE_CALL_TIMEOUT, CollUtils.emptyList());
+        //3.课程id列表
+        List<Long> courseIdList = page
+                .getRecords()
+                .stream()
+                .map(Course::getId)
+                .collect(Collectors.toList());
+        //3.1.异步统计每个课程报名人数map关系
+        CompletableFuture<Map<Long, Integer>> peoNumFuture = AsyncUtils.supply(
+                () -> tradeClient.countEnrollNumOfCourse(courseIdList), REMOTE_CALL_TIMEOUT, CollUtils.emptyMap());
+        //4.获取所有课程分类信息，与远程调用并行
         List<Category> list = categoryService.list();
-        //3.1.转化课程分类id+name map关系
+        //4.1.转化课程分类id+name map关系
         Map<Long, String> categoryNameMap =
                 CollUtils.isEmpty(list) ?
                         new HashMap<>()
                         : list.stream()
                         .collect(Collectors.toMap(Category::getId, Category::getName));
-        //4.课程id列表
-        List<Long> courseIdList = page
-                .getRecords()
-                .stream()
-                .map(Course::getId)
-                .collect(Collectors.toList());
-        //4.1.统计每个课程报名人数map关系
-        Map<Long, Integer> peoNumOfCourseMap = tradeClient.countEnrollNumOfCourse(courseIdList);
+        //4.2.转化课程更新人id+name map
+        List<UserDTO> userDTOS = AsyncUtils.join(userFuture);
+        Map<Long, String> updaterMap =
+                CollUtils.isEmpty(userDTOS) ?
+                        new HashMap<>()
+                        : userDTOS
+                        .stream()
+                        .collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
+        //4.3.每个课程报名人数
+        Map<Long, Integer> peoNumOfCourseMap = AsyncUtils.join(peoNumFuture);
         //5.组装数据
         return PageDTO.of(page, CoursePageVO.class, (course, coursePageVO) -> {
             //5.1.拼接课程分类名称
@@ -516,14 +529,14 @@ public class CourseServiceImpl extends ServiceImpl<CourseMapper, Course> impleme
     }
 
     /**
-     * 异步发送课程完结mq
+     * 发送课程完结mq，与课程状态在同一事务中写入outbox，事务提交后发送；未开启outbox时同步发送，失败则回滚
      *
      * @param finishedCourse
      */
     private void sendFinishedCourse(List<Course> finishedCourse) {
         //1.遍历发送课程完结mq
         for (Course course : finishedCourse) {
-            rabbitMqHelper.sendAsync(MqConstants.Exchange.COURSE_EXCHANGE,
+            outboxPublisher.publish(MqConstants.Exchange.COURSE_EXCHANGE,
                     MqConstants.Key.COURSE_EXPIRE_KEY,
                     course.getId());
         }
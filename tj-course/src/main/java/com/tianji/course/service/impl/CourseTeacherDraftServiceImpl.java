@@ -4,7 +4,7 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.user.UserClient;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.exceptions.DbException;
@@ -47,7 +47,7 @@ public class CourseTeacherDraftServiceImpl extends ServiceImpl<CourseTeacherDraf
     private ICourseTeacherService courseTeacherService;
 
     @Autowired
-    private UserClient userClient;
+    private UserCache userCache;
 
     @Override
     @Transactional(propagation = Propagation.REQUIRED)
@@ -130,7 +130,7 @@ public class CourseTeacherDraftServiceImpl extends ServiceImpl<CourseTeacherDraf
         }
 
         // 2.查询教师详细信息
-        List<UserDTO> UserDTOS = userClient.queryUserByIds(
+        List<UserDTO> UserDTOS = userCache.queryUserByIds(
                 courseTeacherDrafts.stream().map(CourseTeacherDraft::getTeacherId).collect(Collectors.toList()));
         // 3.组织为map
         Map<Long, UserDTO> UserDTOMap = UserDTOS.stream().collect(Collectors.toMap(UserDTO::getId, UserDTO -> UserDTO));
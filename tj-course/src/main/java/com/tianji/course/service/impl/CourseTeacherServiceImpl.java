@@ -3,7 +3,7 @@ package com.tianji.course.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.toolkit.Wrappers;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.user.UserClient;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.constants.ErrorInfo;
 import com.tianji.common.exceptions.DbException;
@@ -35,7 +35,7 @@ import java.util.stream.Collectors;
 public class CourseTeacherServiceImpl extends ServiceImpl<CourseTeacherMapper, CourseTeacher> implements ICourseTeacherService {
 
     @Autowired
-    private UserClient userClient;
+    private UserCache userCache;
 
     @Override
     public List<CourseTeacherVO> queryTeachers(Long couserId) {
@@ -51,7 +51,7 @@ public class CourseTeacherServiceImpl extends ServiceImpl<CourseTeacherMapper, C
         }
         //3.查询教师信息
         List<UserDTO> teacherDetailDTOS =
-                userClient.queryUserByIds(
+                userCache.queryUserByIds(
                         courseTeachers
                                 .stream()
                                 .map(CourseTeacher::getTeacherId)
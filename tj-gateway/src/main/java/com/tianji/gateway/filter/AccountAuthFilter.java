@@ -1,5 +1,6 @@
 package com.tianji.gateway.filter;
 
+import com.tianji.authsdk.gateway.util.AntPathTrie;
 import com.tianji.authsdk.gateway.util.AuthUtil;
 import com.tianji.common.domain.R;
 import com.tianji.common.domain.dto.LoginUserDTO;
@@ -9,11 +10,11 @@ import org.springframework.cloud.gateway.filter.GlobalFilter;
 import org.springframework.core.Ordered;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
-import org.springframework.util.AntPathMatcher;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
 import java.util.List;
+import java.util.Set;
 
 import static com.tianji.auth.common.constants.JwtConstants.AUTHORIZATION_HEADER;
 import static com.tianji.auth.common.constants.JwtConstants.USER_HEADER;
@@ -23,7 +24,8 @@ public class AccountAuthFilter implements GlobalFilter, Ordered {
 
     private final AuthUtil authUtil;
     private final AuthProperties authProperties;
-    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+    // 预编译的无需登录路径，配置刷新后重建
+    private volatile ExcludePaths excludePaths = new ExcludePaths(null);
 
     public AccountAuthFilter(AuthUtil authUtil, AuthProperties authProperties) {
         this.authUtil = authUtil;
@@ -64,12 +66,30 @@ public class AccountAuthFilter implements GlobalFilter, Ordered {
     }
 
     private boolean isExcludePath(String antPath) {
-        for (String pathPattern : authProperties.getExcludePath()) {
-            if(antPathMatcher.match(pathPattern, antPath)){
-                return true;
-            }
+        Set<String> patterns = authProperties.getExcludePath();
+        ExcludePaths current = this.excludePaths;
+        if (!current.isBuiltFrom(patterns)) {
+            // 配置被重新绑定，重建前缀树
+            current = new ExcludePaths(patterns);
+            this.excludePaths = current;
+        }
+        return current.trie.matches(antPath);
+    }
+
+    private static class ExcludePaths {
+        private final Set<String> source;
+        private final int size;
+        private final AntPathTrie trie;
+
+        private ExcludePaths(Set<String> source) {
+            this.source = source;
+            this.size = source == null ? 0 : source.size();
+            this.trie = AntPathTrie.of(source == null ? List.of() : source);
+        }
+
+        private boolean isBuiltFrom(Set<String> patterns) {
+            return source == patterns && size == (patterns == null ? 0 : patterns.size());
         }
-        return false;
     }
 
     @Override
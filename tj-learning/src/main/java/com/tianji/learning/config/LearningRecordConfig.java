@@ -0,0 +1,49 @@
+package com.tianji.learning.config;
+
+import com.tianji.learning.utils.LearningRecordNearCache;
+import com.tianji.learning.utils.MemoryRecordDelayQueue;
+import com.tianji.learning.utils.RecordDelayQueue;
+import com.tianji.learning.utils.RedisRecordDelayQueue;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+@EnableConfigurationProperties(LearningRecordProperties.class)
+public class LearningRecordConfig {
+
+    /**
+     * 基于Redis的ZSET实现的延迟队列，服务重启不会丢失任务，生产环境使用
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "tj.learning.record", name = "delay-queue", havingValue = "redis", matchIfMissing = true)
+    public RecordDelayQueue redisRecordDelayQueue(StringRedisTemplate redisTemplate, LearningRecordProperties properties) {
+        return new RedisRecordDelayQueue(redisTemplate, properties.getLeaseTimeout());
+    }
+
+    /**
+     * 基于JVM内存的延迟队列，仅用于本地开发和测试
+     */
+    @Bean
+    @ConditionalOnProperty(prefix = "tj.learning.record", name = "delay-queue", havingValue = "memory")
+    public RecordDelayQueue memoryRecordDelayQueue(LearningRecordProperties properties) {
+        return new MemoryRecordDelayQueue(properties.getShards());
+    }
+
+    /**
+     * 订阅学习记录本地缓存的失效通知
+     */
+    @Bean
+    public RedisMessageListenerContainer recordCacheListenerContainer(
+            RedisConnectionFactory connectionFactory, LearningRecordNearCache nearCache) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(nearCache, new ChannelTopic(LearningRecordNearCache.INVALIDATE_CHANNEL));
+        return container;
+    }
+}
@@ -0,0 +1,23 @@
+package com.tianji.learning.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Data
+@ConfigurationProperties(prefix = "tj.learning.record")
+public class LearningRecordProperties {
+    /*延迟队列实现：redis（默认，持久化）或 memory（单机测试用）*/
+    private String delayQueue = "redis";
+    /*分片数量，也就是刷盘的工作线程数，按lessonId取模分配*/
+    private int shards = 4;
+    /*播放进度无变化多久后写入数据库*/
+    private Duration delay = Duration.ofSeconds(20);
+    /*每次从一个分片中取出的最大任务数，也就是一次批量更新的最大条数*/
+    private int batchSize = 200;
+    /*分片中没有到期任务时的休眠时间*/
+    private Duration idleInterval = Duration.ofMillis(500);
+    /*取出的任务超过这个时间仍未写入数据库，会被重新取出，需要小于学习记录缓存的有效期*/
+    private Duration leaseTimeout = Duration.ofSeconds(20);
+}
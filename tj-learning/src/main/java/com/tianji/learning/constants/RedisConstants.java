@@ -5,8 +5,32 @@ public interface RedisConstants {
      * 签到记录的Key的前缀：sign:uid:110:202301
      */
     String SIGN_RECORD_KEY_PREFIX = "sign:uid:";
+    /**
+     * 每日签到用户的Key的前缀，HyperLogLog：sign:users:day:20230101
+     */
+    String SIGN_DAY_KEY_PREFIX = "sign:users:day:";
+    /**
+     * 每月签到用户的Key的前缀，HyperLogLog，由每日签到用户合并得到：sign:users:month:202301
+     */
+    String SIGN_MONTH_KEY_PREFIX = "sign:users:month:";
+    /**
+     * 签到人数统计的Key的前缀，field：日期或month，value：签到人数：sign:stats:202301
+     */
+    String SIGN_STATS_KEY_PREFIX = "sign:stats:";
     /**
      * 积分排行榜的Key的前缀：boards:202301
      */
     String POINTS_BOARD_KEY_PREFIX = "boards:";
+    /**
+     * 用户每日某种方式已得积分的Key的前缀：points:cap:20230101:3:110
+     */
+    String POINTS_CAP_KEY_PREFIX = "points:cap:";
+    /**
+     * 积分排行榜持久化进度的Key的前缀：boards:archive:{season}，field：分片序号，value：下一个待持久化的位置
+     */
+    String POINTS_BOARD_ARCHIVE_KEY_PREFIX = "boards:archive:";
+    /**
+     * 回答或评论已更新的点赞总数版本的Key的前缀：likes:times:version:reply:{replyId}
+     */
+    String REPLY_LIKED_TIMES_VERSION_KEY_PREFIX = "likes:times:version:reply:";
 }
@@ -0,0 +1,31 @@
+package com.tianji.learning.controller;
+
+import com.tianji.learning.domain.vo.SignStatsVO;
+import com.tianji.learning.service.ISignRecordService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@RestController
+@RequestMapping("/admin/sign-records")
+@Api(tags = "签到相关接口")
+@RequiredArgsConstructor
+public class SignRecordAdminController {
+
+    private final ISignRecordService recordService;
+
+    @GetMapping("stats/list")
+    @ApiOperation("管理端批量查询用户的月度签到统计，一次最多100个用户")
+    public List<SignStatsVO> querySignStatsList(
+            @ApiParam("用户id集合") @RequestParam("userIds") List<Long> userIds,
+            @ApiParam("月份中的任意一天，默认本月") @RequestParam(value = "date", required = false)
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date){
+        return recordService.querySignStats(userIds, date == null ? LocalDate.now() : date);
+    }
+}
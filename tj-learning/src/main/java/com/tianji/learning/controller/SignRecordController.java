@@ -1,14 +1,21 @@
 package com.tianji.learning.controller;
 
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
 import com.tianji.learning.service.ISignRecordService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.time.LocalDate;
+
 @Api(tags = "签到相关接口")
 @RestController
 @RequestMapping("sign-records")
@@ -22,4 +29,12 @@ public class SignRecordController {
     public SignResultVO addSignRecords(){
         return recordService.addSignRecords();
     }
+
+    @GetMapping("stats")
+    @ApiOperation("查询我的月度签到统计")
+    public SignStatsVO querySignStats(
+            @ApiParam("月份中的任意一天，默认本月") @RequestParam(value = "date", required = false)
+            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate date){
+        return recordService.querySignStats(date);
+    }
 }
@@ -0,0 +1,22 @@
+package com.tianji.learning.domain.vo;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@ApiModel(description = "月度签到统计")
+public class SignStatsVO {
+    @ApiModelProperty("用户id")
+    private Long userId;
+    @ApiModelProperty("当月每天的签到情况，1：已签到，0：未签到，本月只统计到今天")
+    private List<Integer> signRecords;
+    @ApiModelProperty("当月签到天数")
+    private Integer signCount;
+    @ApiModelProperty("当前连续签到天数，包含上月末的连续签到")
+    private Integer currentStreak;
+    @ApiModelProperty("当月最长连续签到天数，包含上月末的连续签到")
+    private Integer longestStreak;
+}
@@ -6,28 +6,57 @@ import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.po.PointsBoard;
 import com.tianji.learning.service.IPointsBoardSeasonService;
 import com.tianji.learning.service.IPointsBoardService;
-import com.tianji.learning.utils.TableInfoContext;
 import com.xxl.job.core.context.XxlJobHelper;
 import com.xxl.job.core.handler.annotation.XxlJob;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
-
-import static com.tianji.learning.constants.LearningConstants.POINTS_BOARD_TABLE_PREFIX;
-
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class PointsBoardPersistentHandler {
 
+    /**
+     * 每次从Redis读取的数量，也是每条SQL写入的数量
+     */
+    private static final int PAGE_SIZE = 2000;
+    /**
+     * 读取和写入之间的队列大小，写入变慢时限制读取，避免占用过多内存
+     */
+    private static final int QUEUE_CAPACITY = 8;
+    private static final Duration ARCHIVE_CHECKPOINT_TTL = Duration.ofDays(7);
+    private static final List<PointsBoard> END = new ArrayList<>(0);
+
     private final IPointsBoardSeasonService seasonService;
 
     private final IPointsBoardService pointsBoardService;
 
     private final StringRedisTemplate redisTemplate;
 
+    private final ExecutorService archiveExecutor = Executors.newCachedThreadPool(
+            r -> new Thread(r, "points-board-archive"));
+
+    @PreDestroy
+    public void destroy() {
+        // 中断正在读取榜单的线程，已写入的进度有记录，任务重新执行时继续
+        archiveExecutor.shutdownNow();
+    }
+
     /**
      * 创建上月的历史榜单表
      */
@@ -45,58 +74,115 @@ public class PointsBoardPersistentHandler {
         pointsBoardService.createPointsBoardTableBySeason(season);
     }
 
+    /**
+     * 持久化榜单：每个分片负责一段连续的名次，一个线程从Redis分批读取，放入有界队列，当前线程批量写入数据库，
+     * 每写入一批记录一次进度，任务失败重新执行时从记录的进度继续
+     */
     @XxlJob("savePointsBoard2DB")
-    public void savePointsBoard2DB(){
+    public void savePointsBoard2DB() throws Exception {
         // 1.获取上月时间
         LocalDateTime time = LocalDateTime.now().minusMonths(1);
-
-        // 2.计算动态表名
-        // 2.1.查询赛季信息
+        // 2.查询赛季信息
         Integer season = seasonService.querySeasonByTime(time);
-
-        // 2.2.将表名存入ThreadLocal
-        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
-        // 3.查询榜单数据
-        // 3.1.拼接KEY
+        if (season == null) {
+            return;
+        }
+        // 3.计算当前分片负责的名次范围[begin, end)
         String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
-        // 3.2.查询数据
-        // int pageNo = 1;
-        int index = XxlJobHelper.getShardIndex(); // 分片任务改造，通过xxljob分配的index,决定该节点处理的数据范围
+        Long size = redisTemplate.opsForZSet().zCard(key);
+        if (size == null || size == 0) {
+            return;
+        }
+        int index = XxlJobHelper.getShardIndex();
         int total = XxlJobHelper.getShardTotal();
-        int pageNo = index + 1; // 起始页，就是分片序号+1
-        int pageSize = 1000;
-        while(true){
-            List<PointsBoard> boardList =pointsBoardService.queryCurrentBoardList(key,pageNo,pageSize);
-            if (CollUtils.isEmpty(boardList)) {
-                break;
+        long begin = size * index / total;
+        long end = size * (index + 1) / total;
+        // 4.读取进度
+        String archiveKey = RedisConstants.POINTS_BOARD_ARCHIVE_KEY_PREFIX + season;
+        String field = String.valueOf(index);
+        Object checkpoint = redisTemplate.opsForHash().get(archiveKey, field);
+        long start = checkpoint == null ? begin : Math.max(begin, Long.parseLong(checkpoint.toString()));
+        if (start >= end) {
+            return;
+        }
+        redisTemplate.expire(archiveKey, ARCHIVE_CHECKPOINT_TTL);
+        // 5.异步读取Redis
+        BlockingQueue<List<PointsBoard>> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Future<?> producer = archiveExecutor.submit(() -> readBoards(key, start, end, queue));
+        // 6.批量写入数据库
+        try {
+            List<PointsBoard> boards;
+            while ((boards = queue.take()) != END) {
+                pointsBoardService.saveSeasonBoards(season, boards);
+                // 6.1.记录进度，id就是名次，也就是下一个待写入的位置
+                long next = boards.get(boards.size() - 1).getId();
+                redisTemplate.opsForHash().put(archiveKey, field, String.valueOf(next));
             }
-            // 4.持久化到数据库
-            // 4.1.把排名信息写入id
-            boardList.forEach(b->{
-                b.setId(b.getRank().longValue());
-                b.setRank(null);
-            });
-            // 4.2.持久化
-            pointsBoardService.saveBatch(boardList);
-            // 5.翻页
-            // pageNo++;
-            pageNo+=total; // 分片任务改造
+            // 6.2.读取失败时抛出异常
+            producer.get();
+        } catch (Exception e) {
+            producer.cancel(true);
+            throw e;
         }
+        log.info("榜单持久化完成，赛季：{}，分片：{}，名次：{} ~ {}", season, index, start + 1, end);
+    }
 
-
-        // 任务结束，移除动态表名
-        TableInfoContext.remove();
-
+    private void readBoards(String key, long start, long end, BlockingQueue<List<PointsBoard>> queue) {
+        try {
+            for (long from = start; from < end; from += PAGE_SIZE) {
+                long to = Math.min(from + PAGE_SIZE, end) - 1;
+                Set<ZSetOperations.TypedTuple<String>> tuples =
+                        redisTemplate.opsForZSet().reverseRangeWithScores(key, from, to);
+                if (CollUtils.isEmpty(tuples)) {
+                    break;
+                }
+                // 名次写入id
+                long rank = from + 1;
+                List<PointsBoard> boards = new ArrayList<>(tuples.size());
+                for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                    PointsBoard b = new PointsBoard();
+                    b.setId(rank++);
+                    b.setUserId(Long.valueOf(tuple.getValue()));
+                    b.setPoints(tuple.getScore() == null ? 0 : tuple.getScore().intValue());
+                    boards.add(b);
+                }
+                queue.put(boards);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // 无论成功失败都要通知写入线程结束，被中断说明写入线程已经失败，不再等待
+            try {
+                queue.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 
+    /**
+     * 核对数据库中的榜单数量与Redis一致后，再删除Redis中的榜单
+     */
     @XxlJob("clearPointsBoardFromRedis")
     public void clearPointsBoardFromRedis(){
-//        // 1.获取上月时间
-//        LocalDateTime time = LocalDateTime.now().minusMonths(1);
-//        // 2.计算key
-//        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
-//        // 3.删除
-//        redisTemplate.unlink(key);
+        // 1.获取上月时间
+        LocalDateTime time = LocalDateTime.now().minusMonths(1);
+        Integer season = seasonService.querySeasonByTime(time);
+        if (season == null) {
+            return;
+        }
+        // 2.计算key
+        String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + time.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        // 3.核对数量
+        Long size = redisTemplate.opsForZSet().zCard(key);
+        long count = pointsBoardService.countSeasonBoards(season);
+        if (size != null && count < size) {
+            XxlJobHelper.handleFail("榜单还未持久化完成，数据库：" + count + "，Redis：" + size);
+            return;
+        }
+        // 4.删除，异步释放内存
+        redisTemplate.unlink(key);
+        redisTemplate.unlink(RedisConstants.POINTS_BOARD_ARCHIVE_KEY_PREFIX + season);
     }
 
 }
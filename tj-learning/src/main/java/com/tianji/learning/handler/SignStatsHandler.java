@@ -0,0 +1,23 @@
+package com.tianji.learning.handler;
+
+import com.tianji.learning.service.ISignRecordService;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+
+@Component
+@RequiredArgsConstructor
+public class SignStatsHandler {
+
+    private final ISignRecordService signRecordService;
+
+    /**
+     * 统计昨天的签到人数，并合并到当月签到人数
+     */
+    @XxlJob("signStatsRollupJob")
+    public void rollupSignStats(){
+        signRecordService.rollupSignStats(LocalDate.now().minusDays(1));
+    }
+}
@@ -1,7 +1,11 @@
 package com.tianji.learning.mapper;
 
+import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.learning.domain.po.InteractionReply;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +17,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface InteractionReplyMapper extends BaseMapper<InteractionReply> {
 
+    /**
+     * 批量更新点赞数量，一条SQL完成
+     */
+    int updateLikedTimes(@Param("list") List<LikedTimesDTO> list);
 }
@@ -4,6 +4,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.tianji.learning.domain.po.PointsBoard;
 import org.apache.ibatis.annotations.Param;
 
+import java.util.List;
+
 /**
  * <p>
  * 学霸天梯榜 Mapper 接口
@@ -15,4 +17,11 @@ import org.apache.ibatis.annotations.Param;
 public interface PointsBoardMapper extends BaseMapper<PointsBoard> {
 
     void createPointsBoardTable(@Param("tableName")String tableName);
+
+    /**
+     * 批量新增榜单数据，已存在的名次会被忽略
+     */
+    int insertIgnoreBatch(@Param("tableName") String tableName, @Param("list") List<PointsBoard> list);
+
+    long countByTable(@Param("tableName") String tableName);
 }
@@ -1,6 +1,7 @@
 package com.tianji.learning.mq;
 
 import com.tianji.common.constants.MqConstants;
+import com.tianji.learning.domain.po.PointsRecord;
 import com.tianji.learning.enums.PointsRecordType;
 import com.tianji.learning.mq.message.SignInMessage;
 import com.tianji.learning.service.IPointsRecordService;
@@ -12,6 +13,9 @@ import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @Component
 @RequiredArgsConstructor
 public class LearningPointsListener {
@@ -22,18 +26,34 @@ public class LearningPointsListener {
             value = @Queue(name = "qa.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.WRITE_REPLY
-    ))
-    public void listenWriteReplyMessage(Long userId){
-        recordService.addPointsRecord(userId, 5, PointsRecordType.QA);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenWriteReplyMessage(List<Long> userIds){
+        List<PointsRecord> records = new ArrayList<>(userIds.size());
+        for (Long userId : userIds) {
+            records.add(newRecord(userId, 5, PointsRecordType.QA));
+        }
+        recordService.addPointsRecords(records);
     }
     // 监听签到事件
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "sign.points.queue", durable = "true"),
             exchange = @Exchange(name = MqConstants.Exchange.LEARNING_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = MqConstants.Key.SIGN_IN
-    ))
-    public void listenSignInMessage(SignInMessage message){
-        recordService.addPointsRecord(message.getUserId(), message.getPoints(), PointsRecordType.SIGN);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenSignInMessage(List<SignInMessage> messages){
+        List<PointsRecord> records = new ArrayList<>(messages.size());
+        for (SignInMessage message : messages) {
+            records.add(newRecord(message.getUserId(), message.getPoints(), PointsRecordType.SIGN));
+        }
+        recordService.addPointsRecords(records);
+    }
+
+    private PointsRecord newRecord(Long userId, int points, PointsRecordType type) {
+        PointsRecord p = new PointsRecord();
+        p.setUserId(userId);
+        p.setPoints(points);
+        p.setType(type);
+        return p;
     }
 
 }
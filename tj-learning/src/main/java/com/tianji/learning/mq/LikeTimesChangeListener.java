@@ -1,7 +1,6 @@
 package com.tianji.learning.mq;
 
 import com.tianji.api.dto.remark.LikedTimesDTO;
-import com.tianji.learning.domain.po.InteractionReply;
 import com.tianji.learning.service.IInteractionReplyService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -25,22 +24,21 @@ public class LikeTimesChangeListener {
 
     private final IInteractionReplyService replyService;
 
+    /**
+     * 批量消费，一段时间内的多条消息合并为一次更新
+     */
     @RabbitListener(bindings = @QueueBinding(
             value = @Queue(name = "qa.liked.times.queue", durable = "true"),
             exchange = @Exchange(name = LIKE_RECORD_EXCHANGE, type = ExchangeTypes.TOPIC),
             key = QA_LIKED_TIMES_KEY
-    ))
-    public void listenReplyLikedTimesChange(List<LikedTimesDTO> likedTimesDTOs){
-        log.debug("监听到回答或评论的点赞数变更");
-        List<InteractionReply> list = new ArrayList<>(likedTimesDTOs.size());
-        for(LikedTimesDTO dto : likedTimesDTOs){
-            InteractionReply r = new InteractionReply();
-            r.setId(dto.getBizId());
-            r.setLikedTimes(dto.getLikedTimes());
-            list.add(r);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenReplyLikedTimesChange(List<List<LikedTimesDTO>> messages){
+        log.debug("监听到回答或评论的点赞数变更，消息数量：{}", messages.size());
+        List<LikedTimesDTO> list = new ArrayList<>();
+        for (List<LikedTimesDTO> likedTimesDTOs : messages) {
+            list.addAll(likedTimesDTOs);
         }
-
-        replyService.updateBatchById(list);
+        replyService.updateLikedTimes(list);
     }
 
 }
@@ -1,12 +1,15 @@
 package com.tianji.learning.service;
 
 import com.baomidou.mybatisplus.extension.service.IService;
+import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.learning.domain.dto.ReplyDTO;
 import com.tianji.learning.domain.po.InteractionReply;
 import com.tianji.learning.domain.query.ReplyPageQuery;
 import com.tianji.learning.domain.vo.ReplyVO;
 
+import java.util.List;
+
 
 public interface IInteractionReplyService extends IService<InteractionReply> {
     
@@ -17,4 +20,9 @@ public interface IInteractionReplyService extends IService<InteractionReply> {
     void hiddenReply(Long id, Boolean hidden);
 
     ReplyVO queryReplyById(Long id);
+
+    /**
+     * 批量更新点赞数量，同一个回答只保留最新版本，比已更新版本旧的数据会被丢弃
+     */
+    void updateLikedTimes(List<LikedTimesDTO> likedTimesDTOs);
 }
@@ -22,4 +22,11 @@ public interface IPointsBoardService extends IService<PointsBoard> {
     void createPointsBoardTableBySeason(Integer season);
 
     List<PointsBoard> queryCurrentBoardList(String key, Integer pageNo, Integer pageSize);
+
+    /**
+     * 把榜单数据写入指定赛季的榜单表，id就是名次，已经写入的名次会被忽略
+     */
+    void saveSeasonBoards(Integer season, List<PointsBoard> boards);
+
+    long countSeasonBoards(Integer season);
 }
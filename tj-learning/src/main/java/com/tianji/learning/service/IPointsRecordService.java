@@ -19,5 +19,10 @@ public interface IPointsRecordService extends IService<PointsRecord> {
 
     void addPointsRecord(Long userId, int points, PointsRecordType type);
 
+    /**
+     * 批量新增积分记录，有积分上限的方式会按上限扣减积分，超过上限的记录不保存
+     */
+    void addPointsRecords(List<PointsRecord> records);
+
     List<PointsStatisticsVO> queryMyPointsToday();
 }
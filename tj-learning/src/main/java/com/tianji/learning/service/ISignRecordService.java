@@ -1,7 +1,26 @@
 package com.tianji.learning.service;
 
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
+
+import java.time.LocalDate;
+import java.util.List;
 
 public interface ISignRecordService {
     SignResultVO addSignRecords();
+
+    /**
+     * 查询当前用户指定月份的签到统计
+     */
+    SignStatsVO querySignStats(LocalDate date);
+
+    /**
+     * 批量查询用户指定月份的签到统计，结果与userIds一一对应，只允许员工和老师调用，一次最多100个用户
+     */
+    List<SignStatsVO> querySignStats(List<Long> userIds, LocalDate date);
+
+    /**
+     * 统计指定日期的签到人数，并合并到当月签到人数
+     */
+    void rollupSignStats(LocalDate date);
 }
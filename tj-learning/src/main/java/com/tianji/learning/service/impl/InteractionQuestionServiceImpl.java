@@ -3,14 +3,14 @@ package com.tianji.learning.service.impl;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.tianji.api.cache.CategoryCache;
-import com.tianji.api.client.course.CatalogueClient;
-import com.tianji.api.client.course.CourseClient;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.search.SearchClient;
-import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.course.CataSimpleInfoDTO;
 import com.tianji.api.dto.course.CourseFullInfoDTO;
 import com.tianji.api.dto.course.CourseSimpleInfoDTO;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.api.loader.BatchLoaderFactory;
+import com.tianji.api.loader.BatchLoaderRegistry;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.BeanUtils;
@@ -34,6 +34,7 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 /**
@@ -48,12 +49,11 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuestionMapper, InteractionQuestion> implements IInteractionQuestionService {
 
-    private final UserClient userClient;
+    private final UserCache userCache;
     private final InteractionReplyMapper replyMapper;
-    private final CourseClient courseClient;
     private final SearchClient searchClient;
-    private final CatalogueClient catalogueClient;
     private final CategoryCache categoryCache;
+    private final BatchLoaderFactory batchLoaderFactory;
 
 
     @Override
@@ -136,7 +136,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         // 3.3.根据id查询用户信息（提问者）
         Map<Long, UserDTO> userMap = new HashMap<>(userIds.size());
         if(CollUtils.isNotEmpty(userIds)) {
-            List<UserDTO> users = userClient.queryUserByIds(userIds);
+            List<UserDTO> users = userCache.queryUserByIds(userIds);
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId,u->u));
         }
 
@@ -184,7 +184,7 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         // 3.查询提问者信息
         UserDTO user = null;
         if(!question.getAnonymity()){
-            user = userClient.queryUserById(question.getUserId());
+            user = userCache.queryUserById(question.getUserId());
         }
         // 4.封装VO
         QuestionVO vo = BeanUtils.copyBean(question, QuestionVO.class);
@@ -250,27 +250,16 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
             cataIds.add(q.getChapterId());
             cataIds.add(q.getSectionId());
         }
-        // 3.2.根据id查询用户
-        List<UserDTO> users = userClient.queryUserByIds(userIds);
-        Map<Long, UserDTO> userMap = new HashMap<>(users.size());
-        if (CollUtils.isNotEmpty(users)) {
-            userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
-        }
-
-        // 3.3.根据id查询课程
-        List<CourseSimpleInfoDTO> cInfos = courseClient.getSimpleInfoList(cIds);
-        Map<Long, CourseSimpleInfoDTO> cInfoMap = new HashMap<>(cInfos.size());
-        if (CollUtils.isNotEmpty(cInfos)) {
-            cInfoMap = cInfos.stream().collect(Collectors.toMap(CourseSimpleInfoDTO::getId, c -> c));
-        }
-
-        // 3.4.根据id查询章节
-        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(cataIds);
-        Map<Long, String> cataMap = new HashMap<>(catas.size());
-        if (CollUtils.isNotEmpty(catas)) {
-            cataMap = catas.stream()
-                    .collect(Collectors.toMap(CataSimpleInfoDTO::getId, CataSimpleInfoDTO::getName));
-        }
+        // 3.2.登记用户、课程、章节的查询，一次派发，各服务并行查询
+        BatchLoaderRegistry loaders = batchLoaderFactory.newRegistry();
+        CompletableFuture<Map<Long, UserDTO>> userFuture = loaders.users().loadMany(userIds);
+        CompletableFuture<Map<Long, CourseSimpleInfoDTO>> courseFuture = loaders.courseSimpleInfos().loadMany(cIds);
+        CompletableFuture<Map<Long, CataSimpleInfoDTO>> cataFuture = loaders.catalogues().loadMany(cataIds);
+        loaders.dispatchAll();
+        Map<Long, UserDTO> userMap = loaders.get(userFuture);
+        Map<Long, CourseSimpleInfoDTO> cInfoMap = loaders.get(courseFuture);
+        Map<Long, String> cataMap = new HashMap<>();
+        loaders.get(cataFuture).forEach((cataId, cata) -> cataMap.put(cataId, cata.getName()));
 
         // 4.封装VO
         List<QuestionAdminVO> voList = new ArrayList<>(records.size());
@@ -314,39 +303,43 @@ public class InteractionQuestionServiceImpl extends ServiceImpl<InteractionQuest
         }
         // 2.转PO为VO
         QuestionAdminVO vo = BeanUtils.copyBean(question, QuestionAdminVO.class);
-        // 3.查询提问者信息
-        UserDTO user = userClient.queryUserById(question.getUserId());
+        // 3.登记提问者、课程、章节的查询，一次派发，各服务并行查询
+        BatchLoaderRegistry loaders = batchLoaderFactory.newRegistry();
+        CompletableFuture<UserDTO> userFuture = loaders.users().load(question.getUserId());
+        CompletableFuture<CourseFullInfoDTO> courseFuture =
+                loaders.courseFullInfos(false, true).load(question.getCourseId());
+        CompletableFuture<Map<Long, CataSimpleInfoDTO>> cataFuture =
+                loaders.catalogues().loadMany(List.of(question.getChapterId(), question.getSectionId()));
+        loaders.dispatchAll();
+        // 4.提问者信息
+        UserDTO user = loaders.get(userFuture);
         if (user != null) {
             vo.setUserName(user.getName());
             vo.setUserIcon(user.getIcon());
         }
-        // 4.查询课程信息
-        CourseFullInfoDTO cInfo = courseClient.getCourseInfoById(
-                question.getCourseId(), false, true);
+        // 5.课程信息
+        CourseFullInfoDTO cInfo = loaders.get(courseFuture);
         if (cInfo != null) {
-            // 4.1.课程名称信息
+            // 5.1.课程名称信息
             vo.setCourseName(cInfo.getName());
-            // 4.2.分类信息
+            // 5.2.分类信息
             vo.setCategoryName(categoryCache.getCategoryNames(cInfo.getCategoryIds()));
-            // 4.3.教师信息
-            List<Long> teacherIds = cInfo.getTeacherIds();
-            List<UserDTO> teachers = userClient.queryUserByIds(teacherIds);
+            // 5.3.教师信息，与提问者相同的用户不会重复查询
+            CompletableFuture<Map<Long, UserDTO>> teacherFuture = loaders.users().loadMany(cInfo.getTeacherIds());
+            loaders.dispatchAll();
+            Collection<UserDTO> teachers = loaders.get(teacherFuture).values();
             if(CollUtils.isNotEmpty(teachers)) {
                 vo.setTeacherName(teachers.stream()
                         .map(UserDTO::getName).collect(Collectors.joining("/")));
             }
         }
-        // 5.查询章节信息
-        List<CataSimpleInfoDTO> catas = catalogueClient.batchQueryCatalogue(
-                List.of(question.getChapterId(), question.getSectionId()));
-        Map<Long, String> cataMap = new HashMap<>(catas.size());
-        if (CollUtils.isNotEmpty(catas)) {
-            cataMap = catas.stream()
-                    .collect(Collectors.toMap(CataSimpleInfoDTO::getId, CataSimpleInfoDTO::getName));
-        }
-        vo.setChapterName(cataMap.getOrDefault(question.getChapterId(), ""));
-        vo.setSectionName(cataMap.getOrDefault(question.getSectionId(), ""));
-        // 6.封装VO
+        // 6.章节信息
+        Map<Long, CataSimpleInfoDTO> cataMap = loaders.get(cataFuture);
+        CataSimpleInfoDTO chapter = cataMap.get(question.getChapterId());
+        CataSimpleInfoDTO section = cataMap.get(question.getSectionId());
+        vo.setChapterName(chapter == null ? "" : chapter.getName());
+        vo.setSectionName(section == null ? "" : section.getName());
+        // 7.封装VO
         return vo;
     }
 
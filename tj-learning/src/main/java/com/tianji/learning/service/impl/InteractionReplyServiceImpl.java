@@ -2,8 +2,9 @@ package com.tianji.learning.service.impl;
 
 import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.remark.RemarkClient;
-import com.tianji.api.client.user.UserClient;
+import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
@@ -12,6 +13,7 @@ import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.BeanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.UserContext;
+import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.dto.ReplyDTO;
 import com.tianji.learning.domain.po.InteractionQuestion;
 import com.tianji.learning.domain.po.InteractionReply;
@@ -23,10 +25,14 @@ import com.tianji.learning.service.IInteractionQuestionService;
 import com.tianji.learning.service.IInteractionReplyService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -45,10 +51,28 @@ import static com.tianji.common.constants.Constant.DATA_FIELD_NAME_LIKED_TIME;
 @RequiredArgsConstructor
 public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMapper, InteractionReply> implements IInteractionReplyService {
 
+    /**
+     * 每条SQL最多更新的回答数量
+     */
+    private static final int MAX_UPDATE_SIZE = 500;
+    /**
+     * 点赞总数版本的保存时间，比它更晚到达的消息不再判断版本
+     */
+    private static final String LIKED_TIMES_VERSION_TTL = String.valueOf(TimeUnit.DAYS.toSeconds(1));
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> LIKED_TIMES_VERSION_SCRIPT;
+
+    static {
+        LIKED_TIMES_VERSION_SCRIPT = new DefaultRedisScript<>();
+        LIKED_TIMES_VERSION_SCRIPT.setLocation(new ClassPathResource("lua/liked_times_version.lua"));
+        LIKED_TIMES_VERSION_SCRIPT.setResultType(List.class);
+    }
+
     private final IInteractionQuestionService questionService;
-    private final UserClient userClient;
+    private final UserCache userCache;
     private final RemarkClient remarkClient;
     private final RabbitMqHelper mqHelper;
+    private final StringRedisTemplate redisTemplate;
 
     @Override
     @Transactional
@@ -138,7 +162,7 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         // 3.3.查询用户
         Map<Long, UserDTO> userMap = new HashMap<>(userIds.size());
         if(userIds.size() > 0) {
-            List<UserDTO> users = userClient.queryUserByIds(userIds);
+            List<UserDTO> users = userCache.queryUserByIds(userIds);
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
         }
         // 3.4.查询用户点赞状态
@@ -216,7 +240,7 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
         // 2.3.查询用户详细
         Map<Long, UserDTO> userMap = new HashMap<>(userIds.size());
         if(userIds.size() > 0) {
-            List<UserDTO> users = userClient.queryUserByIds(userIds);
+            List<UserDTO> users = userCache.queryUserByIds(userIds);
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
         }
         // 2.4.查询用户点赞状态
@@ -240,4 +264,43 @@ public class InteractionReplyServiceImpl extends ServiceImpl<InteractionReplyMap
 //        v.setLiked(bizLiked.contains(id));
         return v;
     }
+
+    @Override
+    public void updateLikedTimes(List<LikedTimesDTO> likedTimesDTOs) {
+        // 1.合并同一个回答的多条数据，只保留版本最新的
+        Map<Long, LikedTimesDTO> latest = new LinkedHashMap<>(likedTimesDTOs.size());
+        for (LikedTimesDTO dto : likedTimesDTOs) {
+            latest.merge(dto.getBizId(), dto, (o, n) -> versionOf(n) >= versionOf(o) ? n : o);
+        }
+        // 2.与已经更新的版本比较，丢弃过期的数据
+        List<LikedTimesDTO> list = new ArrayList<>(latest.size());
+        List<LikedTimesDTO> versioned = new ArrayList<>(latest.size());
+        for (LikedTimesDTO dto : latest.values()) {
+            // 没有版本的消息直接更新
+            (dto.getVersion() == null ? list : versioned).add(dto);
+        }
+        if (!versioned.isEmpty()) {
+            List<String> keys = new ArrayList<>(versioned.size());
+            List<String> args = new ArrayList<>(versioned.size() + 1);
+            args.add(LIKED_TIMES_VERSION_TTL);
+            for (LikedTimesDTO dto : versioned) {
+                keys.add(RedisConstants.REPLY_LIKED_TIMES_VERSION_KEY_PREFIX + dto.getBizId());
+                args.add(dto.getVersion().toString());
+            }
+            List<?> result = redisTemplate.execute(LIKED_TIMES_VERSION_SCRIPT, keys, args.toArray());
+            for (int i = 0; i < versioned.size(); i++) {
+                if (result == null || ((Long) result.get(i)) == 1L) {
+                    list.add(versioned.get(i));
+                }
+            }
+        }
+        // 3.批量更新，每批一条SQL
+        for (int from = 0; from < list.size(); from += MAX_UPDATE_SIZE) {
+            getBaseMapper().updateLikedTimes(list.subList(from, Math.min(from + MAX_UPDATE_SIZE, list.size())));
+        }
+    }
+
+    private static long versionOf(LikedTimesDTO dto) {
+        return dto.getVersion() == null ? 0 : dto.getVersion();
+    }
 }
@@ -18,6 +18,7 @@ import com.tianji.learning.service.ILearningLessonService;
 import com.tianji.learning.service.ILearningRecordService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.learning.utils.LearningRecordDelayTaskHandler;
+import com.tianji.learning.utils.LearningRecordNearCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -40,6 +41,7 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
     private final ILearningLessonService lessonService;
     private final CourseClient courseClient;
     private final LearningRecordDelayTaskHandler taskHandler;
+    private final LearningRecordNearCache nearCache;
 
     /**
      * 查询当前用户课程的学习记录
@@ -143,6 +145,8 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
             if (!success) {
                 throw new DbException("新增学习记录失败！");
             }
+            // 写入缓存，覆盖之前缓存的记录不存在状态，其它实例也可能缓存了不存在状态，需要通知
+            taskHandler.writeRecordCache(record, true);
             return finished;
         }else{
             // 4.存在，则更新
@@ -178,20 +182,30 @@ public class LearningRecordServiceImpl extends ServiceImpl<LearningRecordMapper,
     }
 
     private LearningRecord queryOldRecord( Long lessonId, Long sectionId) {
-        // 1.查询缓存
-        LearningRecord record = taskHandler.readRecordCache(lessonId,sectionId);
-        // 2.如果命中，直接返回
+        // 1.查询本地缓存
+        LearningRecord record = nearCache.get(lessonId, sectionId);
+        if (record != null) {
+            // 命中，可能是缓存的记录不存在状态
+            return nearCache.isMissing(record) ? null : record;
+        }
+        // 2.查询Redis缓存
+        record = taskHandler.readRecordCache(lessonId,sectionId);
+        // 3.如果命中，直接返回
         if (record != null) {
             return record;
         }
-        // 3.未命中，查询数据库
+        // 4.未命中，查询数据库
         record = lambdaQuery()
                     .eq(LearningRecord::getLessonId,lessonId)
                     .eq(LearningRecord::getSectionId,sectionId)
                     .one();
-
-        // 4.写入缓存
-        taskHandler.writeRecordCache(record);
+        if (record == null) {
+            // 5.记录不存在，缓存空值，避免重复查询数据库
+            nearCache.putMissing(lessonId, sectionId);
+            return null;
+        }
+        // 6.写入缓存，数据来自数据库，记录没有变化，不需要通知其它实例
+        taskHandler.writeRecordCache(record, false);
         return record;
 
     }
@@ -1,8 +1,11 @@
 package com.tianji.learning.service.impl;
 
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.user.UserClient;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
@@ -12,13 +15,16 @@ import com.tianji.learning.domain.query.PointsBoardQuery;
 import com.tianji.learning.domain.vo.PointsBoardItemVO;
 import com.tianji.learning.domain.vo.PointsBoardVO;
 import com.tianji.learning.mapper.PointsBoardMapper;
+import com.tianji.learning.service.IPointsBoardSeasonService;
 import com.tianji.learning.service.IPointsBoardService;
+import com.tianji.learning.utils.TableInfoContext;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.core.BoundZSetOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -39,7 +45,24 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
 
     private final StringRedisTemplate redisTemplate;
 
-    private final UserClient userClient;
+    private final UserCache userCache;
+
+    private final IPointsBoardSeasonService seasonService;
+
+    /**
+     * 历史榜单的分页缓存，key：赛季:页码:每页数量
+     */
+    private final Cache<String, List<PointsBoardItemVO>> historyBoardCache = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
+    /**
+     * 用户在历史赛季的积分和排名的缓存，key：赛季:用户id
+     */
+    private final Cache<String, PointsBoard> historyRankCache = Caffeine.newBuilder()
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofHours(1))
+            .build();
 
     /**
      * 分页查询指定赛季的积分排行榜
@@ -52,17 +75,16 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         // 1.判断是否是查询当前赛季
         Long season = query.getSeason();
         boolean isCurrent = season==null || season==0;
-        // 2.查询我的积分和排名
+        // 2.查询榜单列表，历史榜单已经包含用户信息
         LocalDateTime now = LocalDateTime.now();
         String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + now.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        List<PointsBoardItemVO> items = isCurrent ?
+                toItemVOs(queryCurrentBoardList(key,query.getPageNo(),query.getPageSize())) :
+                queryHistoryBoardList(query);
+        // 3.查询我的积分和排名
         PointsBoard myBoard = isCurrent ?
                 queryMyCurrentBoard(key) :  // 查询当前榜单（Redis）
                 queryMyHistoryBoard(season); // 查询历史榜单（MySQL）
-        // 3.查询榜单列表
-        List<PointsBoard> list = isCurrent ?
-                queryCurrentBoardList(key,query.getPageNo(),query.getPageSize()) :
-                queryHistoryBoardList(query);
-        // 4.封装VO
         // 4.封装VO
         PointsBoardVO vo = new PointsBoardVO();
         // 4.1.处理我的信息
@@ -70,17 +92,25 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
             vo.setPoints(myBoard.getPoints());
             vo.setRank(myBoard.getRank());
         }
-        if (CollUtils.isEmpty(list)) {
+        if (CollUtils.isEmpty(items)) {
             return vo;
         }
-        // 4.2.查询用户信息
+        vo.setBoardList(items);
+        return vo;
+    }
+
+    private List<PointsBoardItemVO> toItemVOs(List<PointsBoard> list) {
+        if (CollUtils.isEmpty(list)) {
+            return CollUtils.emptyList();
+        }
+        // 1.批量查询用户信息
         Set<Long> uIds = list.stream().map(PointsBoard::getUserId).collect(Collectors.toSet());
-        List<UserDTO> users = userClient.queryUserByIds(uIds);
+        List<UserDTO> users = userCache.queryUserByIds(uIds);
         Map<Long,String> userMap = new HashMap<>(uIds.size()); // id->名字
         if(CollUtils.isNotEmpty(users)) {
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
         }
-        // 4.3.转换VO
+        // 2.转换VO
         List<PointsBoardItemVO> items = new ArrayList<>(list.size());
         for(PointsBoard p : list){
             PointsBoardItemVO v = new PointsBoardItemVO();
@@ -89,8 +119,7 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
             v.setName(userMap.get(p.getUserId()));
             items.add(v);
         }
-        vo.setBoardList(items);
-        return vo;
+        return items;
     }
 
     @Override
@@ -98,9 +127,50 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
         getBaseMapper().createPointsBoardTable(POINTS_BOARD_TABLE_PREFIX + season);
     }
 
-    private List<PointsBoard> queryHistoryBoardList(PointsBoardQuery query) {
-        // TODO
-        return null;
+    @Override
+    public void saveSeasonBoards(Integer season, List<PointsBoard> boards) {
+        getBaseMapper().insertIgnoreBatch(POINTS_BOARD_TABLE_PREFIX + season, boards);
+    }
+
+    @Override
+    public long countSeasonBoards(Integer season) {
+        return getBaseMapper().countByTable(POINTS_BOARD_TABLE_PREFIX + season);
+    }
+
+    private List<PointsBoardItemVO> queryHistoryBoardList(PointsBoardQuery query) {
+        Long season = query.getSeason();
+        int pageNo = query.getPageNo(), pageSize = query.getPageSize();
+        // 1.查询缓存，历史赛季的榜单不会再变化
+        String cacheKey = season + ":" + pageNo + ":" + pageSize;
+        List<PointsBoardItemVO> items = historyBoardCache.getIfPresent(cacheKey);
+        if (items != null) {
+            return items;
+        }
+        // 2.只能查询已经结束的赛季
+        Integer currentSeason = seasonService.querySeasonByTime(LocalDateTime.now());
+        if (currentSeason != null && season >= currentSeason) {
+            throw new BadRequestException("赛季不存在或者还未结束");
+        }
+        // 3.榜单的id就是名次，按id范围查询，避免深分页
+        long from = (long) (pageNo - 1) * pageSize;
+        List<PointsBoard> list;
+        TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
+        try {
+            list = lambdaQuery()
+                    .gt(PointsBoard::getId, from)
+                    .le(PointsBoard::getId, from + pageSize)
+                    .orderByAsc(PointsBoard::getId)
+                    .list();
+        } finally {
+            TableInfoContext.remove();
+        }
+        list.forEach(p -> p.setRank(p.getId().intValue()));
+        // 4.查询用户信息，写入缓存，榜单还未持久化时不缓存
+        items = toItemVOs(list);
+        if (CollUtils.isNotEmpty(items)) {
+            historyBoardCache.put(cacheKey, items);
+        }
+        return items;
     }
 
     @Override
@@ -132,8 +202,22 @@ public class PointsBoardServiceImpl extends ServiceImpl<PointsBoardMapper, Point
     }
 
     private PointsBoard queryMyHistoryBoard(Long season) {
-        // TODO
-        return null;
+        // 1.获取当前用户
+        Long userId = UserContext.getUser();
+        // 2.查询缓存，未命中则查询数据库，未上榜的用户也缓存，积分和排名都是0
+        return historyRankCache.get(season + ":" + userId, k -> {
+            PointsBoard board;
+            TableInfoContext.setInfo(POINTS_BOARD_TABLE_PREFIX + season);
+            try {
+                board = lambdaQuery().eq(PointsBoard::getUserId, userId).one();
+            } finally {
+                TableInfoContext.remove();
+            }
+            PointsBoard p = new PointsBoard();
+            p.setPoints(board == null ? 0 : board.getPoints());
+            p.setRank(board == null ? 0 : board.getId().intValue());
+            return p;
+        });
     }
 
     private PointsBoard queryMyCurrentBoard(String key) {
@@ -12,12 +12,21 @@ import com.tianji.learning.enums.PointsRecordType;
 import com.tianji.learning.mapper.PointsRecordMapper;
 import com.tianji.learning.service.IPointsRecordService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -31,40 +40,141 @@ import java.util.List;
 @RequiredArgsConstructor
 public class PointsRecordServiceImpl extends ServiceImpl<PointsRecordMapper, PointsRecord> implements IPointsRecordService {
 
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern(DateUtils.DEFAULT_DATE_FORMAT_COMPACT);
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> POINTS_CAP_SCRIPT;
+
+    static {
+        POINTS_CAP_SCRIPT = new DefaultRedisScript<>();
+        POINTS_CAP_SCRIPT.setLocation(new ClassPathResource("lua/points_cap.lua"));
+        POINTS_CAP_SCRIPT.setResultType(List.class);
+    }
+
     private final StringRedisTemplate redisTemplate;
 
     @Override
     public void addPointsRecord(Long userId, int points, PointsRecordType type) {
-        LocalDateTime now = LocalDateTime.now();
-        int maxPoints = type.getMaxPoints();
-        // 1.判断当前方式有没有积分上限
-        int realPoints = points;
-        if(maxPoints>0){
-            // 2.有，则需要判断是否超过上限
-            LocalDateTime begin = DateUtils.getDayStartTime(now);
-            LocalDateTime end = DateUtils.getDayEndTime(now);
-            // 2.1.查询今日已得积分
-            int currentPoints = queryUserPointsByTypeAndDate(userId,type,begin,end);
-            // 2.2.判断是否超过上限
-            if(currentPoints >= maxPoints){
-                // 2.3.超过，直接结束
-                return;
-            }
-            // 2.4.没超过，保存积分记录
-            if(currentPoints+points>maxPoints){
-                realPoints = maxPoints - currentPoints;
-            }
-        }
-        // 3.没有，直接保存积分记录
         PointsRecord p = new PointsRecord();
-        p.setPoints(realPoints);
+        p.setPoints(points);
         p.setUserId(userId);
         p.setType(type);
-        save(p);
-        // 4.更新总积分到Redis
+        addPointsRecords(List.of(p));
+    }
+
+    @Override
+    public void addPointsRecords(List<PointsRecord> records) {
+        LocalDateTime now = LocalDateTime.now();
+        // 1.判断每条记录的积分方式有没有积分上限，有则记录今日已得积分的key
+        List<String> keys = new ArrayList<>(records.size());
+        for (PointsRecord r : records) {
+            keys.add(r.getType().getMaxPoints() > 0 ? RedisConstants.POINTS_CAP_KEY_PREFIX + now.format(DAY_FORMATTER)
+                    + ":" + r.getType().getValue() + ":" + r.getUserId() : null);
+        }
+        // 2.在Redis中批量累加今日已得积分，同时判断是否超过上限
+        int[] realPoints = incrTodayPoints(records, keys, now);
+        List<PointsRecord> list = new ArrayList<>(records.size());
+        Map<String, Integer> cappedPoints = new HashMap<>();
+        for (int i = 0; i < records.size(); i++) {
+            PointsRecord r = records.get(i);
+            if (keys.get(i) != null) {
+                if (realPoints[i] <= 0) {
+                    // 超过上限，直接跳过
+                    continue;
+                }
+                cappedPoints.merge(keys.get(i), realPoints[i], Integer::sum);
+            }
+            r.setPoints(realPoints[i]);
+            list.add(r);
+        }
+        if (list.isEmpty()) {
+            return;
+        }
+        // 3.批量保存积分记录，失败则回退今日已得积分
+        try {
+            saveBatch(list);
+        } catch (RuntimeException e) {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection strConnection = (StringRedisConnection) connection;
+                cappedPoints.forEach((key, points) -> strConnection.decrBy(key, points));
+                return null;
+            });
+            throw e;
+        }
+        // 4.更新总积分到Redis，同一个用户只累加一次
+        Map<Long, Integer> userPoints = list.stream()
+                .collect(Collectors.groupingBy(PointsRecord::getUserId, Collectors.summingInt(PointsRecord::getPoints)));
         String key = RedisConstants.POINTS_BOARD_KEY_PREFIX + now.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
-        redisTemplate.opsForZSet().incrementScore(key,userId.toString(),realPoints);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection strConnection = (StringRedisConnection) connection;
+            userPoints.forEach((userId, points) -> strConnection.zIncrBy(key, points, userId.toString()));
+            return null;
+        });
+    }
+
+    /**
+     * 批量累加今日已得积分，所有记录的上限判断只需一次请求，缓存不存在时再请求一次
+     * @return 每条记录实际获得的积分，没有积分上限的记录直接返回原积分
+     */
+    private int[] incrTodayPoints(List<PointsRecord> records, List<String> keys, LocalDateTime now) {
+        int[] result = new int[records.size()];
+        List<Integer> capped = new ArrayList<>(records.size());
+        for (int i = 0; i < records.size(); i++) {
+            if (keys.get(i) == null) {
+                result[i] = records.get(i).getPoints();
+            } else {
+                capped.add(i);
+            }
+        }
+        if (capped.isEmpty()) {
+            return result;
+        }
+        // 1.缓存到第二天凌晨1点过期
+        LocalDateTime begin = DateUtils.getDayStartTime(now);
+        LocalDateTime end = DateUtils.getDayEndTime(now);
+        String ttl = String.valueOf(Duration.between(now, end).getSeconds() + 3600);
+        // 2.执行脚本
+        List<Integer> missing = executePointsCap(records, keys, capped, ttl, Map.of(), result);
+        if (missing.isEmpty()) {
+            return result;
+        }
+        // 3.缓存不存在，查询数据库中今日已得积分作为初始值，同一个key只查询一次，再次执行脚本
+        Map<String, String> initialPoints = new HashMap<>(missing.size());
+        for (Integer i : missing) {
+            PointsRecord r = records.get(i);
+            initialPoints.computeIfAbsent(keys.get(i), k -> String.valueOf(
+                    queryUserPointsByTypeAndDate(r.getUserId(), r.getType(), begin, end)));
+        }
+        executePointsCap(records, keys, missing, ttl, initialPoints, result);
+        return result;
+    }
 
+    /**
+     * 执行积分上限脚本，结果写入result
+     * @return 缓存不存在且没有初始值的记录下标
+     */
+    private List<Integer> executePointsCap(List<PointsRecord> records, List<String> keys, List<Integer> indexes,
+                                           String ttl, Map<String, String> initialPoints, int[] result) {
+        List<String> scriptKeys = new ArrayList<>(indexes.size());
+        List<String> args = new ArrayList<>(indexes.size() * 3 + 1);
+        args.add(ttl);
+        for (Integer i : indexes) {
+            PointsRecord r = records.get(i);
+            scriptKeys.add(keys.get(i));
+            args.add(r.getPoints().toString());
+            args.add(String.valueOf(r.getType().getMaxPoints()));
+            args.add(initialPoints.getOrDefault(keys.get(i), ""));
+        }
+        List<?> values = redisTemplate.execute(POINTS_CAP_SCRIPT, scriptKeys, args.toArray());
+        List<Integer> missing = new ArrayList<>();
+        for (int k = 0; k < indexes.size(); k++) {
+            long value = values == null ? 0 : (Long) values.get(k);
+            if (value < 0) {
+                missing.add(indexes.get(k));
+            } else {
+                result[indexes.get(k)] = (int) value;
+            }
+        }
+        return missing;
     }
 
     @Override
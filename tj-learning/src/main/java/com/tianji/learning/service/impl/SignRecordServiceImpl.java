@@ -1,31 +1,62 @@
 package com.tianji.learning.service.impl;
 
+import com.tianji.api.client.user.UserClient;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.constants.MqConstants;
+import com.tianji.common.enums.UserType;
+import com.tianji.common.exceptions.BadRequestException;
 import com.tianji.common.exceptions.BizIllegalException;
+import com.tianji.common.exceptions.ForbiddenException;
 import com.tianji.common.utils.BooleanUtils;
 import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.DateUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.learning.constants.RedisConstants;
 import com.tianji.learning.domain.vo.SignResultVO;
+import com.tianji.learning.domain.vo.SignStatsVO;
 import com.tianji.learning.mq.message.SignInMessage;
 import com.tianji.learning.service.ISignRecordService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.connection.BitFieldSubCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 
+@Slf4j
 @Service
 @RequiredArgsConstructor
 public class SignRecordServiceImpl implements ISignRecordService {
 
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern(DateUtils.DEFAULT_DATE_FORMAT_COMPACT);
+    /**
+     * 每日签到用户保留的时间，秒
+     */
+    private static final long SIGN_DAY_KEY_TTL = TimeUnit.DAYS.toSeconds(40);
+    /**
+     * 读取一个月的签到记录：BITFIELD key GET u31 0
+     */
+    private static final BitFieldSubCommands GET_MONTH = BitFieldSubCommands.create()
+            .get(BitFieldSubCommands.BitFieldType.unsigned(31)).valueAt(0);
+
+    /**
+     * 批量查询签到统计时一次最多查询的用户数量
+     */
+    private static final int MAX_STATS_USERS = 100;
+
     private final StringRedisTemplate redisTemplate;
     private final RabbitMqHelper mqHelper;
+    private final UserClient userClient;
 
     @Override
     public SignResultVO addSignRecords() {
@@ -40,10 +71,12 @@ public class SignRecordServiceImpl implements ISignRecordService {
         // 1.4.计算offset
         int offset = now.getDayOfMonth()-1;
         // 1.5.保存签到信息
-        Boolean exists = redisTemplate.opsForValue().setBit(key,offset,true);
+        Boolean exists = redisTemplate.opsForValue().setBit(key, offset, true);
         if (BooleanUtils.isTrue(exists)) {
             throw new BizIllegalException("不允许重复签到！");
         }
+        // 1.6.记录当天的签到用户，只用于统计，失败不影响签到
+        recordDailySigner(userId, now);
         // 2.计算连续签到天数
         int signDays = countSignDays(key, now.getDayOfMonth());
         // 3.计算签到得分
@@ -59,10 +92,14 @@ public class SignRecordServiceImpl implements ISignRecordService {
                 rewardPoints = 40;
                 break;
         }
-        // 4.保存积分明细记录, 这里只是发送消息
-        mqHelper.send(MqConstants.Exchange.LEARNING_EXCHANGE,
-                MqConstants.Key.SIGN_IN,
-                SignInMessage.of(userId,rewardPoints+1)); // 签到积分是基本得分+奖励积分
+        // 4.保存积分明细记录, 这里只是异步发送消息，不等待broker确认
+        int points = rewardPoints + 1; // 签到积分是基本得分+奖励积分
+        mqHelper.sendAsync(MqConstants.Exchange.LEARNING_EXCHANGE, MqConstants.Key.SIGN_IN, SignInMessage.of(userId, points))
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.error("签到积分消息发送失败，用户：{}，积分：{}", userId, points, e);
+                    }
+                });
 
         // 5.封装返回
         SignResultVO vo = new SignResultVO();
@@ -71,6 +108,153 @@ public class SignRecordServiceImpl implements ISignRecordService {
         return vo;
     }
 
+    private void recordDailySigner(Long userId, LocalDate now) {
+        // 用户id是雪花算法生成的，超出了bitmap的offset上限，因此用HyperLogLog统计人数
+        String dayKey = RedisConstants.SIGN_DAY_KEY_PREFIX + now.format(DAY_FORMATTER);
+        try {
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                StringRedisConnection strConnection = (StringRedisConnection) connection;
+                strConnection.pfAdd(dayKey, userId.toString());
+                strConnection.expire(dayKey, SIGN_DAY_KEY_TTL);
+                return null;
+            });
+        } catch (Exception e) {
+            log.error("记录当天签到用户失败，用户：{}", userId, e);
+        }
+    }
+
+    @Override
+    public SignStatsVO querySignStats(LocalDate date) {
+        Long userId = UserContext.getUser();
+        return doQuerySignStats(List.of(userId), date == null ? LocalDate.now() : date).get(0);
+    }
+
+    @Override
+    public List<SignStatsVO> querySignStats(List<Long> userIds, LocalDate date) {
+        if (CollUtils.isEmpty(userIds)) {
+            return CollUtils.emptyList();
+        }
+        // 1.只有员工和老师可以查询其他用户的签到统计
+        Integer userType = userClient.queryUserType(UserContext.getUser());
+        if (userType == null || userType == UserType.STUDENT.getValue()) {
+            throw new ForbiddenException("无权查询其他用户的签到统计");
+        }
+        // 2.限制一次查询的用户数量
+        if (userIds.size() > MAX_STATS_USERS) {
+            throw new BadRequestException("一次最多查询" + MAX_STATS_USERS + "个用户的签到统计");
+        }
+        return doQuerySignStats(userIds, date);
+    }
+
+    private List<SignStatsVO> doQuerySignStats(List<Long> userIds, LocalDate date) {
+        // 1.计算统计到哪一天，本月统计到今天，历史月份统计到月末
+        LocalDate today = LocalDate.now();
+        boolean isCurrentMonth = date.getYear() == today.getYear() && date.getMonth() == today.getMonth();
+        int days = isCurrentMonth ? today.getDayOfMonth() : date.lengthOfMonth();
+        LocalDate lastMonth = date.minusMonths(1);
+        String suffix = date.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER);
+        String lastSuffix = lastMonth.format(DateUtils.SIGN_DATE_SUFFIX_FORMATTER);
+        // 2.一次读取本月和上月的全部签到记录
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection strConnection = (StringRedisConnection) connection;
+            for (Long userId : userIds) {
+                strConnection.bitfield(RedisConstants.SIGN_RECORD_KEY_PREFIX + userId + suffix, GET_MONTH);
+                strConnection.bitfield(RedisConstants.SIGN_RECORD_KEY_PREFIX + userId + lastSuffix, GET_MONTH);
+            }
+            return null;
+        });
+        // 3.计算统计结果
+        List<SignStatsVO> list = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            int mask = toDayMask(results.get(2 * i), days);
+            int lastMask = toDayMask(results.get(2 * i + 1), lastMonth.lengthOfMonth());
+            // 3.1.上月末的连续签到天数
+            int lastTail = tailOnes(lastMask, lastMonth.lengthOfMonth());
+            // 3.2.当前连续签到，本月今天还未签到时，统计到昨天
+            int end = isCurrentMonth && (mask >>> (days - 1) & 1) == 0 ? days - 1 : days;
+            int current = tailOnes(mask, end);
+            if (current == end) {
+                current += lastTail;
+            }
+            // 3.3.最长连续签到，月初的连续签到要加上上月末的
+            int head = Integer.numberOfTrailingZeros(~mask);
+            int longest = Math.max(longestOnes(mask), head + (head > 0 ? lastTail : 0));
+
+            SignStatsVO vo = new SignStatsVO();
+            vo.setUserId(userIds.get(i));
+            List<Integer> records = new ArrayList<>(days);
+            for (int d = 0; d < days; d++) {
+                records.add(mask >>> d & 1);
+            }
+            vo.setSignRecords(records);
+            vo.setSignCount(Integer.bitCount(mask));
+            vo.setCurrentStreak(current);
+            vo.setLongestStreak(longest);
+            list.add(vo);
+        }
+        return list;
+    }
+
+    @Override
+    public void rollupSignStats(LocalDate date) {
+        String dayKey = RedisConstants.SIGN_DAY_KEY_PREFIX + date.format(DAY_FORMATTER);
+        String month = date.format(DateUtils.POINTS_BOARD_SUFFIX_FORMATTER);
+        String monthKey = RedisConstants.SIGN_MONTH_KEY_PREFIX + month;
+        // 1.统计当天签到人数，合并到当月签到用户，统计当月签到人数，HyperLogLog的误差约0.81%
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection strConnection = (StringRedisConnection) connection;
+            strConnection.pfCount(dayKey);
+            strConnection.pfMerge(monthKey, monthKey, dayKey);
+            strConnection.pfCount(monthKey);
+            strConnection.expire(monthKey, SIGN_DAY_KEY_TTL);
+            return null;
+        });
+        // 2.保存统计结果
+        Map<String, String> stats = new HashMap<>(2);
+        stats.put(String.valueOf(date.getDayOfMonth()), String.valueOf(results.get(0)));
+        stats.put("month", String.valueOf(results.get(2)));
+        redisTemplate.opsForHash().putAll(RedisConstants.SIGN_STATS_KEY_PREFIX + month, stats);
+    }
+
+    /**
+     * 把BITFIELD GET u31 0的结果转为第d天在第d-1位的掩码，只保留前days天
+     */
+    private static int toDayMask(Object result, int days) {
+        if (!(result instanceof List) || CollUtils.isEmpty((List<?>) result)) {
+            return 0;
+        }
+        Long value = (Long) ((List<?>) result).get(0);
+        if (value == null) {
+            return 0;
+        }
+        // 第1天在第30位，翻转后在第1位
+        int mask = Integer.reverse(value.intValue()) >>> 1;
+        return mask & (int) ((1L << days) - 1);
+    }
+
+    /**
+     * 第end天往前的连续签到天数
+     */
+    private static int tailOnes(int mask, int end) {
+        if (end <= 0) {
+            return 0;
+        }
+        // 把第end天移到最高位，统计最高位开始连续1的个数
+        return Integer.numberOfLeadingZeros(~(mask << (32 - end)));
+    }
+
+    /**
+     * 最长连续1的个数，每次与左移一位的自己做与运算，每段连续的1都会少一个
+     */
+    private static int longestOnes(int mask) {
+        int n = 0;
+        while (mask != 0) {
+            mask &= mask << 1;
+            n++;
+        }
+        return n;
+    }
+
     /**
      * 连续签到天数
      * @param key
@@ -87,13 +271,8 @@ public class SignRecordServiceImpl implements ISignRecordService {
             return 0;
         }
         int num = result.get(0).intValue();
-        // 2.定义一个计数器
-        int count = 0;
-        while((num&1)==1){
-            count ++;
-            num >>>= 1;
-        }
-        return count;
+        // 2.从最低位（今天）开始连续1的个数
+        return Integer.numberOfTrailingZeros(~num);
     }
 
 }
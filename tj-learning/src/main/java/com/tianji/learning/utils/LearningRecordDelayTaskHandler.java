@@ -1,70 +1,146 @@
 package com.tianji.learning.utils;
 
-import com.tianji.common.utils.JsonUtils;
+import com.baomidou.mybatisplus.core.enums.SqlMethod;
+import com.baomidou.mybatisplus.core.toolkit.Constants;
+import com.baomidou.mybatisplus.extension.toolkit.SqlHelper;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
+import com.tianji.learning.config.LearningRecordProperties;
 import com.tianji.learning.domain.po.LearningLesson;
 import com.tianji.learning.domain.po.LearningRecord;
 import com.tianji.learning.mapper.LearningRecordMapper;
 import com.tianji.learning.service.ILearningLessonService;
-import lombok.Data;
-import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.logging.LogFactory;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.LocalDateTime;
-import java.util.Objects;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.DelayQueue;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
 
+/**
+ * 学习记录的延迟写入处理器。
+ * 播放进度先写入Redis缓存，同时提交一个延迟任务，用户停止提交进度一段时间后，才把最新进度批量写入数据库。
+ * 任务按lessonId分片，每个分片由一个线程独立处理，同一课表的任务始终由同一个线程处理。
+ * 任务写入数据库后才从队列中确认删除，写入失败时放回队列重试。
+ */
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class LearningRecordDelayTaskHandler {
 
     private final StringRedisTemplate redisTemplate;
-    private final LearningRecordMapper recordMapper;
     private final ILearningLessonService lessonService;
-    private final DelayQueue<DelayTask<RecordTaskData>> queue = new DelayQueue<>();
+    private final RecordDelayQueue queue;
+    private final LearningRecordProperties properties;
+    private final LearningRecordNearCache nearCache;
     private final static String RECORD_KEY_TEMPLATE = "learning:record:{}";
+    private final static long RECORD_CACHE_TTL_MILLIS = Duration.ofMinutes(1).toMillis();
+    private final static Duration RETRY_DELAY = Duration.ofSeconds(5);
+    private final static byte[] INVALIDATE_CHANNEL =
+            LearningRecordNearCache.INVALIDATE_CHANNEL.getBytes(StandardCharsets.UTF_8);
     private static volatile boolean begin = true;
+    private ThreadPoolTaskExecutor executor;
+
+    // 监控指标：刷盘的记录数、刷盘次数、刷盘总耗时、最大耗时
+    private final LongAdder flushedRecords = new LongAdder();
+    private final LongAdder flushTimes = new LongAdder();
+    private final LongAdder flushNanos = new LongAdder();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
 
     @PostConstruct
     public void init(){
-        // 初始化时开启处理延迟队列的任务，注意要使用异步线，否则初始化的将卡在处理任务的循环中
-        CompletableFuture.runAsync(this::handleDelayTask);
+        // 每个分片一个线程，处理各自分片中的延迟任务
+        int shards = properties.getShards();
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(shards);
+        executor.setMaxPoolSize(shards);
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("learning-record-flusher-");
+        executor.initialize();
+        for (int i = 0; i < shards; i++) {
+            int shard = i;
+            executor.execute(() -> handleDelayTask(shard));
+        }
     }
     @PreDestroy
     public void destroy(){
         begin = false;
+        executor.shutdown();
         log.debug("延迟任务停止执行！");
     }
 
-    // 添加播放记录到Redis，并添加一个延迟检测任务到DelayQueue
+    // 添加播放记录到Redis，并添加一个延迟检测任务到延迟队列
     public void addLearningRecordTask(LearningRecord record){
-        // 1.添加数据到Redis缓存
-        writeRecordCache(record);
-        // 2.提交延迟任务到延迟队列 DelayQueue
-        queue.add(new DelayTask<>(new RecordTaskData((record)), Duration.ofSeconds(20)));
+        int shard = shardOf(record.getLessonId());
+        RecordTaskData task = new RecordTaskData(record.getLessonId(), record.getSectionId());
+        // 1.添加数据到Redis缓存，只是播放进度变化，不通知其它实例。
+        // 基于Redis的延迟队列在同一个管道中提交延迟任务，同一小节的任务会合并为一个
+        boolean offered = writeRecordCache(record, false,
+                connection -> queue.offer(connection, shard, task, properties.getDelay()));
+        // 2.延迟队列不支持管道，或者管道执行失败，单独提交延迟任务
+        if (!offered) {
+            queue.offer(shard, task, properties.getDelay());
+        }
     }
 
-    public void writeRecordCache(LearningRecord record) {
-        log.debug("更新学习记录的缓存数据");
+    /**
+     * 写入学习记录缓存
+     * @param record 学习记录
+     * @param notify 是否通知其它实例删除本地缓存。只有记录的状态变化时(如新增记录)才需要通知，
+     *               心跳只更新播放进度，其它实例缓存的旧进度不影响判断，等待本地缓存过期即可
+     */
+    public void writeRecordCache(LearningRecord record, boolean notify) {
+        writeRecordCache(record, notify, connection -> false);
+    }
 
+    /**
+     * 写入学习记录缓存，同时在同一个管道中执行其它写操作
+     * @return other的执行结果，写入失败时返回false
+     */
+    private boolean writeRecordCache(LearningRecord record, boolean notify, Predicate<RedisConnection> other) {
+        log.debug("更新学习记录的缓存数据");
+        boolean[] result = new boolean[1];
         try {
             // 1.数据转换
-            String json = JsonUtils.toJsonStr(new RecordCacheData(record));
-            // 2.写入Redis
-            String key = StringUtils.format(RECORD_KEY_TEMPLATE,record.getLessonId());
-            redisTemplate.opsForHash().put(key,record.getSectionId().toString(),json);
-            // 3.添加缓存过期时间
-            redisTemplate.expire(key,Duration.ofMinutes(1));
+            byte[] value = RecordCacheCodec.encode(record);
+            // 2.写入本地缓存
+            nearCache.put(record);
+            // 3.写入Redis，同时添加缓存过期时间、按需通知其它实例删除本地缓存，基于管道一次网络往返
+            byte[] key = recordKey(record.getLessonId());
+            byte[] field = record.getSectionId().toString().getBytes(StandardCharsets.UTF_8);
+            byte[] message = notify ? nearCache.invalidateMessage(record.getLessonId(), record.getSectionId()) : null;
+            redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                connection.hSet(key, field, value);
+                connection.pExpire(key, RECORD_CACHE_TTL_MILLIS);
+                if (message != null) {
+                    connection.publish(INVALIDATE_CHANNEL, message);
+                }
+                result[0] = other.test(connection);
+                return null;
+            });
+            return result[0];
         } catch (Exception e) {
             log.error("更新学习记录缓存异常", e);
+            return false;
         }
 
     }
@@ -72,13 +148,18 @@ public class LearningRecordDelayTaskHandler {
     // 查询Redis缓存中的指定小节的播放记录
     public LearningRecord readRecordCache(Long lessonId, Long sectionId){
         try {
-            String key = StringUtils.format(RECORD_KEY_TEMPLATE,lessonId);
-            String cacheData = (String) redisTemplate.opsForHash().get(key,sectionId.toString());
-            if (cacheData == null) {
-                return null;
-            }
+            byte[] key = recordKey(lessonId);
+            byte[] field = sectionId.toString().getBytes(StandardCharsets.UTF_8);
+            byte[] cacheData = redisTemplate.execute((RedisCallback<byte[]>) connection -> connection.hGet(key, field));
             // 2.数据检查和转换
-            return JsonUtils.toBean(cacheData, LearningRecord.class);
+            LearningRecord record = RecordCacheCodec.decode(cacheData);
+            if (record != null) {
+                // 3.写入本地缓存，编码时没有保存课表和小节id，需要补充
+                record.setLessonId(lessonId);
+                record.setSectionId(sectionId);
+                nearCache.put(record);
+            }
+            return record;
         } catch (Exception e) {
             log.error("缓存读取异常", e);
             return null;
@@ -87,71 +168,149 @@ public class LearningRecordDelayTaskHandler {
 
     // 删除Redis缓存中的指定小节的播放记录
     public void cleanRecordCache(Long lessonId, Long sectionId){
-        // 删除数据
-        String key = StringUtils.format(RECORD_KEY_TEMPLATE, lessonId);
-        redisTemplate.opsForHash().delete(key, sectionId.toString());
+        // 1.删除本地缓存
+        nearCache.invalidate(lessonId, sectionId);
+        // 2.删除Redis数据，并通知其它实例删除本地缓存
+        byte[] key = recordKey(lessonId);
+        byte[] field = sectionId.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] message = nearCache.invalidateMessage(lessonId, sectionId);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.hDel(key, field);
+            connection.publish(INVALIDATE_CHANNEL, message);
+            return null;
+        });
     }
 
-    // 处理延迟任务
-    public void handleDelayTask(){
-        // 从队列中拿出数据和redis缓存比较moment，moment一致，就持久化播放进度数据到数据库
+    // 处理一个分片的延迟任务
+    public void handleDelayTask(int shard){
+        // 从分片中批量取出到期的任务，读取Redis缓存中的最新播放进度，批量持久化到数据库
         while(begin){
             try {
-                DelayTask<RecordTaskData> task = queue.take();
-                RecordTaskData data= task.getData();
-                // 2.查询Redis缓存
-                LearningRecord record = readRecordCache(data.getLessonId(), data.getSectionId());
-                if (record == null) {
+                List<RecordTaskData> tasks = queue.pollDue(shard, properties.getBatchSize());
+                if (CollUtils.isEmpty(tasks)) {
+                    // 没有到期的任务，休眠一会儿
+                    TimeUnit.MILLISECONDS.sleep(properties.getIdleInterval().toMillis());
                     continue;
                 }
-                // 3.比较数据，moment值
-                if(!Objects.equals(data.getMoment(), record.getMoment())) {
-                    // 不一致，说明用户还在持续提交播放进度，放弃旧数据
-                    continue;
+                try {
+                    flush(tasks);
+                } catch (Exception e) {
+                    // 写入数据库失败，任务放回延迟队列稍后重试
+                    queue.retry(shard, tasks, RETRY_DELAY);
+                    throw e;
                 }
-                // 4.一致，持久化播放进度数据到数据库
-                // 4.1.更新学习记录的moment
-                record.setFinished(null); // 不要更误新完成状态
-                recordMapper.updateById(record);
-                // 4.2.更新课表最近学习信息
-                LearningLesson lesson = new LearningLesson();
-                lesson.setId(data.getLessonId());
-                lesson.setLatestSectionId(data.getSectionId());
-                lesson.setLatestLearnTime(LocalDateTime.now());
-                lessonService.updateById(lesson);
-
+                // 写入数据库成功后才确认任务，实例在此之前宕机时，任务会被重新取出
+                queue.ack(shard, tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             } catch (Exception e) {
                 log.error("处理延迟任务发生异常", e);
             }
         }
+    }
 
-
+    private void flush(List<RecordTaskData> tasks) {
+        long start = System.nanoTime();
+        // 1.批量查询Redis缓存
+        List<LearningRecord> caches = readRecordCaches(tasks);
+        // 2.组织数据，同一个课表只需要更新一次最近学习的小节
+        List<LearningRecord> records = new ArrayList<>(tasks.size());
+        Map<Long, LearningLesson> lessons = new LinkedHashMap<>(tasks.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < tasks.size(); i++) {
+            RecordTaskData task = tasks.get(i);
+            LearningRecord record = caches.get(i);
+            if (record == null) {
+                continue;
+            }
+            // 2.1.学习记录只更新moment，不要误更新完成状态
+            record.setFinished(null);
+            records.add(record);
+            // 2.2.课表最近学习信息
+            LearningLesson lesson = new LearningLesson();
+            lesson.setId(task.getLessonId());
+            lesson.setLatestSectionId(task.getSectionId());
+            lesson.setLatestLearnTime(now);
+            lessons.put(task.getLessonId(), lesson);
+        }
+        if (records.isEmpty()) {
+            return;
+        }
+        // 3.批量持久化
+        updateRecordsBatch(records);
+        lessonService.updateBatchById(lessons.values());
+        // 4.记录监控指标
+        long cost = System.nanoTime() - start;
+        flushedRecords.add(records.size());
+        flushTimes.increment();
+        flushNanos.add(cost);
+        maxFlushNanos.accumulateAndGet(cost, Math::max);
     }
 
-    @Data
-    @NoArgsConstructor
-    private static class RecordCacheData{
-        private Long id;
-        private Integer moment;
-        private Boolean finished;
-
-        public RecordCacheData(LearningRecord record) {
-            this.id = record.getId();
-            this.moment = record.getMoment();
-            this.finished = record.getFinished();
+    private List<LearningRecord> readRecordCaches(List<RecordTaskData> tasks) {
+        // 基于管道批量查询，一次网络往返，结果保持原始字节，由编解码器解析
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (RecordTaskData task : tasks) {
+                connection.hGet(recordKey(task.getLessonId()),
+                        task.getSectionId().toString().getBytes(StandardCharsets.UTF_8));
+            }
+            return null;
+        }, RedisSerializer.byteArray());
+        List<LearningRecord> records = new ArrayList<>(tasks.size());
+        for (Object result : results) {
+            LearningRecord record = null;
+            try {
+                record = RecordCacheCodec.decode((byte[]) result);
+            } catch (Exception e) {
+                log.error("缓存读取异常", e);
+            }
+            records.add(record);
         }
+        return records;
+    }
+
+    private void updateRecordsBatch(List<LearningRecord> records) {
+        // 基于JDBC批处理执行updateById，与IService#updateBatchById一致
+        String sqlStatement = SqlHelper.getSqlStatement(LearningRecordMapper.class, SqlMethod.UPDATE_BY_ID);
+        SqlHelper.executeBatch(LearningRecord.class, LogFactory.getLog(getClass()), records, records.size(),
+                (sqlSession, entity) -> {
+                    MapperMethod.ParamMap<LearningRecord> param = new MapperMethod.ParamMap<>();
+                    param.put(Constants.ENTITY, entity);
+                    sqlSession.update(sqlStatement, param);
+                });
+    }
+
+    private byte[] recordKey(Long lessonId) {
+        return StringUtils.format(RECORD_KEY_TEMPLATE, lessonId).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int shardOf(Long lessonId) {
+        return (int) Math.floorMod(lessonId, (long) properties.getShards());
     }
-    @Data
-    @NoArgsConstructor
-    private static class RecordTaskData{
-        private Long lessonId;
-        private Long sectionId;
-        private Integer moment;
-
-        public RecordTaskData(LearningRecord record) {
-            this.lessonId = record.getLessonId();
-            this.sectionId = record.getSectionId();
-            this.moment = record.getMoment();
+
+    /**
+     * 延迟队列中积压的任务数量
+     */
+    public long getQueueDepth() {
+        long depth = 0;
+        for (int i = 0; i < properties.getShards(); i++) {
+            depth += queue.size(i);
         }
+        return depth;
+    }
+
+    /**
+     * 定期输出延迟队列积压和刷盘耗时
+     */
+    @Scheduled(fixedRate = 60000)
+    public void reportMetrics() {
+        long times = flushTimes.sumThenReset();
+        long nanos = flushNanos.sumThenReset();
+        long maxNanos = maxFlushNanos.getAndSet(0);
+        log.info("学习记录延迟队列积压：{}，刷盘次数：{}，刷盘记录数：{}，平均耗时：{}ms，最大耗时：{}ms",
+                getQueueDepth(), times, flushedRecords.sumThenReset(),
+                times == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos / times),
+                TimeUnit.NANOSECONDS.toMillis(maxNanos));
     }
 }
@@ -0,0 +1,104 @@
+package com.tianji.learning.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.tianji.learning.domain.po.LearningRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * 学习记录的本地缓存，位于Redis缓存之前。
+ * 同一个用户观看视频时，心跳请求通常会落到同一个实例上，因此大部分查询都可以在本地命中。
+ * 其它实例新增或完成了学习记录时，会通过Redis的发布订阅通知本实例删除本地缓存，只更新播放进度时不通知。
+ */
+@Slf4j
+@Component
+public class LearningRecordNearCache implements MessageListener {
+
+    /**
+     * 缓存失效通知的频道，消息格式：nodeId:lessonId:sectionId
+     */
+    public final static String INVALIDATE_CHANNEL = "learning:record:invalidate";
+    /**
+     * 表示数据库中不存在学习记录的占位对象
+     */
+    private final static LearningRecord MISSING = new LearningRecord();
+    /**
+     * 本实例的唯一标示，用于忽略自己发出的失效通知
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Cache<String, LearningRecord> cache = Caffeine.newBuilder()
+            .initialCapacity(1024)
+            .maximumSize(100_000)
+            .expireAfterWrite(Duration.ofMinutes(1))
+            .recordStats()
+            .build();
+
+    /**
+     * 查询本地缓存
+     * @return 未命中返回null，命中不存在的记录返回{@link #MISSING}，可以通过{@link #isMissing}判断
+     */
+    public LearningRecord get(Long lessonId, Long sectionId) {
+        return cache.getIfPresent(cacheKey(lessonId, sectionId));
+    }
+
+    public boolean isMissing(LearningRecord record) {
+        return record == MISSING;
+    }
+
+    public void put(LearningRecord record) {
+        cache.put(cacheKey(record.getLessonId(), record.getSectionId()), record);
+    }
+
+    /**
+     * 缓存数据库中不存在学习记录的小节，避免反复查询数据库
+     */
+    public void putMissing(Long lessonId, Long sectionId) {
+        cache.put(cacheKey(lessonId, sectionId), MISSING);
+    }
+
+    public void invalidate(Long lessonId, Long sectionId) {
+        cache.invalidate(cacheKey(lessonId, sectionId));
+    }
+
+    /**
+     * 生成本实例发出的失效通知
+     */
+    public byte[] invalidateMessage(Long lessonId, Long sectionId) {
+        return (nodeId + ":" + cacheKey(lessonId, sectionId)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int i = body.indexOf(':');
+        if (i < 0 || nodeId.equals(body.substring(0, i))) {
+            // 格式错误，或者是自己发出的通知，本地缓存已经是最新的
+            return;
+        }
+        cache.invalidate(body.substring(i + 1));
+    }
+
+    /**
+     * 定期输出本地缓存的命中率
+     */
+    @Scheduled(fixedRate = 60000)
+    public void reportMetrics() {
+        CacheStats stats = cache.stats();
+        log.info("学习记录本地缓存数量：{}，命中：{}，未命中：{}，命中率：{}",
+                cache.estimatedSize(), stats.hitCount(), stats.missCount(), stats.hitRate());
+    }
+
+    private String cacheKey(Long lessonId, Long sectionId) {
+        return lessonId + ":" + sectionId;
+    }
+}
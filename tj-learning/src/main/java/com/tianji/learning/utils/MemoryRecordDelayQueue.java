@@ -0,0 +1,70 @@
+package com.tianji.learning.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+
+/**
+ * 基于JVM内存的延迟队列，服务重启会丢失任务，仅用于本地开发和测试
+ */
+public class MemoryRecordDelayQueue implements RecordDelayQueue {
+
+    private final DelayQueue<DelayTask<RecordTaskData>>[] queues;
+    /**
+     * 每个小节最新一次提交的执行时刻，队列中执行时刻与之不一致的任务已经被覆盖，直接丢弃
+     */
+    private final Map<String, Long> deadlines = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public MemoryRecordDelayQueue(int shards) {
+        queues = new DelayQueue[shards];
+        for (int i = 0; i < shards; i++) {
+            queues[i] = new DelayQueue<>();
+        }
+    }
+
+    @Override
+    public void offer(int shard, RecordTaskData task, Duration delay) {
+        DelayTask<RecordTaskData> delayTask = new DelayTask<>(task, delay);
+        deadlines.put(task.toMember(), delayTask.getDeadlineNanos());
+        queues[shard].add(delayTask);
+    }
+
+    @Override
+    public List<RecordTaskData> pollDue(int shard, int max) {
+        List<RecordTaskData> tasks = new ArrayList<>();
+        DelayTask<RecordTaskData> delayTask;
+        while (tasks.size() < max && (delayTask = queues[shard].poll()) != null) {
+            RecordTaskData task = delayTask.getData();
+            // 只有最新的任务才能从记录中移除，被覆盖的旧任务直接丢弃
+            if (deadlines.remove(task.toMember(), delayTask.getDeadlineNanos())) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public void ack(int shard, List<RecordTaskData> tasks) {
+        // 取出时已经从队列中移除，无需处理
+    }
+
+    @Override
+    public void retry(int shard, List<RecordTaskData> tasks, Duration delay) {
+        for (RecordTaskData task : tasks) {
+            // 期间又提交了新任务的小节，保留新任务
+            DelayTask<RecordTaskData> delayTask = new DelayTask<>(task, delay);
+            if (deadlines.putIfAbsent(task.toMember(), delayTask.getDeadlineNanos()) == null) {
+                queues[shard].add(delayTask);
+            }
+        }
+    }
+
+    @Override
+    public long size(int shard) {
+        return queues[shard].size();
+    }
+}
@@ -0,0 +1,72 @@
+package com.tianji.learning.utils;
+
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.learning.domain.po.LearningRecord;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 学习记录缓存的二进制编解码器，只保存id、moment、finished三个字段。
+ * 格式：varint(id) + varint(moment << 1 | finished)，通常只需要10个字节左右，
+ * 编解码过程不需要反射和中间字符串。
+ */
+public class RecordCacheCodec {
+
+    private static final int MAX_LENGTH = 10 + 5;
+
+    private RecordCacheCodec() {
+    }
+
+    public static byte[] encode(LearningRecord record) {
+        long id = record.getId() == null ? 0 : record.getId();
+        int moment = record.getMoment() == null ? 0 : record.getMoment();
+        boolean finished = Boolean.TRUE.equals(record.getFinished());
+        byte[] buf = new byte[MAX_LENGTH];
+        int pos = writeVarLong(buf, 0, id);
+        pos = writeVarLong(buf, pos, ((long) moment << 1) | (finished ? 1 : 0));
+        byte[] bytes = new byte[pos];
+        System.arraycopy(buf, 0, bytes, 0, pos);
+        return bytes;
+    }
+
+    public static LearningRecord decode(byte[] bytes) {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == '{') {
+            // 兼容旧版本写入的JSON格式缓存
+            return JsonUtils.toBean(new String(bytes, StandardCharsets.UTF_8), LearningRecord.class);
+        }
+        long id = 0;
+        int shift = 0;
+        int pos = 0;
+        byte b;
+        do {
+            b = bytes[pos++];
+            id |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        long tail = 0;
+        shift = 0;
+        do {
+            b = bytes[pos++];
+            tail |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+
+        LearningRecord record = new LearningRecord();
+        record.setId(id);
+        record.setMoment((int) (tail >>> 1));
+        record.setFinished((tail & 1) == 1);
+        return record;
+    }
+
+    private static int writeVarLong(byte[] buf, int pos, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buf[pos++] = (byte) value;
+        return pos;
+    }
+}
@@ -0,0 +1,60 @@
+package com.tianji.learning.utils;
+
+import org.springframework.data.redis.connection.RedisConnection;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * 学习记录的延迟队列，按分片存储任务。
+ * 同一个小节的任务重复提交时，只会刷新它的执行时刻，因此用户持续播放期间任务永远不会到期，
+ * 直到最后一次提交后超过延迟时间才会被取出。
+ * 取出的任务处理成功后需要{@link #ack}，处理失败需要{@link #retry}，否则超过租约时间后会被重新取出。
+ */
+public interface RecordDelayQueue {
+
+    /**
+     * 提交或刷新延迟任务
+     * @param shard 分片序号
+     * @param task 任务数据
+     * @param delay 延迟时间
+     */
+    void offer(int shard, RecordTaskData task, Duration delay);
+
+    /**
+     * 在Redis管道中提交或刷新延迟任务，调用者可以把它与其它Redis写操作合并为一次网络往返
+     * @param connection 开启了管道的Redis连接
+     * @return 是否已经提交，不基于Redis的实现返回false，调用者需要改用{@link #offer(int, RecordTaskData, Duration)}
+     */
+    default boolean offer(RedisConnection connection, int shard, RecordTaskData task, Duration delay) {
+        return false;
+    }
+
+    /**
+     * 取出分片中已到期的任务，标记为处理中
+     * @param shard 分片序号
+     * @param max 最多取出的任务数量
+     * @return 到期的任务，没有则返回空集合
+     */
+    List<RecordTaskData> pollDue(int shard, int max);
+
+    /**
+     * 确认任务已处理完成，从处理中的任务中移除
+     * @param shard 分片序号
+     * @param tasks 处理完成的任务
+     */
+    void ack(int shard, List<RecordTaskData> tasks);
+
+    /**
+     * 任务处理失败，放回延迟队列稍后重试
+     * @param shard 分片序号
+     * @param tasks 处理失败的任务
+     * @param delay 重试的延迟时间
+     */
+    void retry(int shard, List<RecordTaskData> tasks, Duration delay);
+
+    /**
+     * 分片中积压的任务数量，包括处理中的任务
+     */
+    long size(int shard);
+}
@@ -0,0 +1,28 @@
+package com.tianji.learning.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 学习记录延迟任务，同一个小节的任务在队列中只会保留一个
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RecordTaskData {
+    private Long lessonId;
+    private Long sectionId;
+
+    /**
+     * 任务在队列中的唯一标示：lessonId:sectionId
+     */
+    public String toMember() {
+        return lessonId + ":" + sectionId;
+    }
+
+    public static RecordTaskData of(String member) {
+        int i = member.indexOf(':');
+        return new RecordTaskData(Long.valueOf(member.substring(0, i)), Long.valueOf(member.substring(i + 1)));
+    }
+}
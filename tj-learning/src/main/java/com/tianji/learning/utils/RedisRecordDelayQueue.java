@@ -0,0 +1,110 @@
+package com.tianji.learning.utils;
+
+import com.tianji.common.utils.CollUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 基于Redis的ZSET实现的延迟队列，member是lessonId:sectionId，score是任务执行时刻。
+ * 取出的任务先移到处理中的ZSET，score是租约到期时刻，写入数据库后才删除。
+ * 实例在处理过程中宕机时，租约到期后任务会被其它实例重新取出
+ */
+@RequiredArgsConstructor
+public class RedisRecordDelayQueue implements RecordDelayQueue {
+
+    private final static String DELAY_QUEUE_KEY_PREFIX = "learning:record:delay:";
+    private final static String INFLIGHT_KEY_PREFIX = "learning:record:inflight:";
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> POLL_SCRIPT;
+    private static final DefaultRedisScript<Long> RETRY_SCRIPT;
+
+    static {
+        POLL_SCRIPT = new DefaultRedisScript<>();
+        POLL_SCRIPT.setLocation(new ClassPathResource("lua/record_delay_poll.lua"));
+        POLL_SCRIPT.setResultType(List.class);
+        RETRY_SCRIPT = new DefaultRedisScript<>();
+        RETRY_SCRIPT.setLocation(new ClassPathResource("lua/record_delay_retry.lua"));
+        RETRY_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    /**
+     * 取出的任务超过这个时间仍未确认，会被重新取出
+     */
+    private final Duration leaseTimeout;
+
+    @Override
+    public void offer(int shard, RecordTaskData task, Duration delay) {
+        long deadline = System.currentTimeMillis() + delay.toMillis();
+        // ZADD会覆盖同一个member的score，也就是合并了同一小节的多次提交
+        redisTemplate.opsForZSet().add(DELAY_QUEUE_KEY_PREFIX + shard, task.toMember(), deadline);
+    }
+
+    @Override
+    public boolean offer(RedisConnection connection, int shard, RecordTaskData task, Duration delay) {
+        long deadline = System.currentTimeMillis() + delay.toMillis();
+        connection.zSetCommands().zAdd((DELAY_QUEUE_KEY_PREFIX + shard).getBytes(StandardCharsets.UTF_8),
+                deadline, task.toMember().getBytes(StandardCharsets.UTF_8));
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<RecordTaskData> pollDue(int shard, int max) {
+        long now = System.currentTimeMillis();
+        List<String> members = redisTemplate.execute(POLL_SCRIPT,
+                List.of(DELAY_QUEUE_KEY_PREFIX + shard, INFLIGHT_KEY_PREFIX + shard),
+                String.valueOf(now), String.valueOf(max), String.valueOf(now + leaseTimeout.toMillis()));
+        if (CollUtils.isEmpty(members)) {
+            return CollUtils.emptyList();
+        }
+        List<RecordTaskData> tasks = new ArrayList<>(members.size());
+        for (String member : members) {
+            tasks.add(RecordTaskData.of(member));
+        }
+        return tasks;
+    }
+
+    @Override
+    public void ack(int shard, List<RecordTaskData> tasks) {
+        if (CollUtils.isEmpty(tasks)) {
+            return;
+        }
+        redisTemplate.opsForZSet().remove(INFLIGHT_KEY_PREFIX + shard, toMembers(tasks).toArray());
+    }
+
+    @Override
+    public void retry(int shard, List<RecordTaskData> tasks, Duration delay) {
+        if (CollUtils.isEmpty(tasks)) {
+            return;
+        }
+        List<String> args = new ArrayList<>(tasks.size() + 1);
+        args.add(String.valueOf(System.currentTimeMillis() + delay.toMillis()));
+        args.addAll(toMembers(tasks));
+        redisTemplate.execute(RETRY_SCRIPT, List.of(DELAY_QUEUE_KEY_PREFIX + shard, INFLIGHT_KEY_PREFIX + shard),
+                args.toArray());
+    }
+
+    @Override
+    public long size(int shard) {
+        Long size = redisTemplate.opsForZSet().zCard(DELAY_QUEUE_KEY_PREFIX + shard);
+        Long inflight = redisTemplate.opsForZSet().zCard(INFLIGHT_KEY_PREFIX + shard);
+        return (size == null ? 0 : size) + (inflight == null ? 0 : inflight);
+    }
+
+    private List<String> toMembers(List<RecordTaskData> tasks) {
+        List<String> members = new ArrayList<>(tasks.size());
+        for (RecordTaskData task : tasks) {
+            members.add(task.toMember());
+        }
+        return members;
+    }
+}
@@ -1,9 +1,31 @@
 package com.tianji.learning.utils;
 
+import com.tianji.common.utils.ContextSnapshot;
+
 public class TableInfoContext {
 
     private static final ThreadLocal<String> TL = new ThreadLocal<>();
 
+    static {
+        // 异步任务中也能拿到动态表名
+        ContextSnapshot.register(new ContextSnapshot.Accessor<String>() {
+            @Override
+            public String get() {
+                return TL.get();
+            }
+
+            @Override
+            public void set(String value) {
+                TL.set(value);
+            }
+
+            @Override
+            public void remove() {
+                TL.remove();
+            }
+        });
+    }
+
     public static void setInfo(String info) {
         TL.set(info);
     }
@@ -0,0 +1,17 @@
+-- 比较并更新点赞总数的版本
+-- KEYS[1...]: 每个业务的版本key
+-- ARGV[1]: 版本的过期时间，秒
+-- ARGV[2...]: 版本，与KEYS一一对应
+-- 返回值：与业务id一一对应，1-版本不比已有版本旧，需要更新，0-过期数据，丢弃
+local result = {}
+for i = 1, #KEYS do
+    local version = ARGV[i + 1]
+    local old = redis.call('get', KEYS[i])
+    if old and tonumber(old) > tonumber(version) then
+        result[#result + 1] = 0
+    else
+        redis.call('set', KEYS[i], version, 'EX', ARGV[1])
+        result[#result + 1] = 1
+    end
+end
+return result
@@ -0,0 +1,29 @@
+-- 批量累加用户今日某种方式的已得积分，同时判断积分上限，按顺序处理，同一个key可以出现多次
+-- KEYS[i]: 第i条记录的今日已得积分 points:cap:{yyyyMMdd}:{type}:{userId}
+-- ARGV[1]: 过期时间，秒
+-- ARGV[3i-1]、ARGV[3i]、ARGV[3i+1]: 第i条记录的本次积分、积分上限、缓存不存在时的初始值(即数据库中今日已得积分，空字符串表示没有)
+-- 返回值：与KEYS一一对应的实际获得的积分，缓存不存在且没有初始值时为-1
+local result = {}
+for i = 1, #KEYS do
+    local points = tonumber(ARGV[3 * i - 1])
+    local max = tonumber(ARGV[3 * i])
+    local initial = ARGV[3 * i + 1]
+    local cur = redis.call('get', KEYS[i])
+    if not cur and initial ~= '' then
+        cur = initial
+        redis.call('set', KEYS[i], cur, 'EX', ARGV[1])
+    end
+    if not cur then
+        result[i] = -1
+    else
+        cur = tonumber(cur)
+        if cur >= max then
+            result[i] = 0
+        else
+            local real = math.min(points, max - cur)
+            redis.call('incrby', KEYS[i], real)
+            result[i] = real
+        end
+    end
+end
+return result
@@ -0,0 +1,28 @@
+-- 取出到期的学习记录任务，放入处理中的集合，处理完成后再删除，实例宕机时任务不会丢失
+-- KEYS[1]: 延迟队列 learning:record:delay:{shard}
+-- KEYS[2]: 处理中的任务 learning:record:inflight:{shard}，score是租约到期时刻
+-- ARGV[1]: 当前时刻，毫秒
+-- ARGV[2]: 最多取出的任务数量
+-- ARGV[3]: 本次取出的任务的租约到期时刻，毫秒
+-- 返回值：取出的任务，包括其它实例取出后超过租约时间仍未确认的任务
+local items = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])
+if #items > 0 then
+    redis.call('ZREM', KEYS[1], unpack(items))
+end
+local left = tonumber(ARGV[2]) - #items
+if left > 0 then
+    local seen = {}
+    for _, m in ipairs(items) do
+        seen[m] = true
+    end
+    local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1], 'LIMIT', 0, left)
+    for _, m in ipairs(expired) do
+        if not seen[m] then
+            items[#items + 1] = m
+        end
+    end
+end
+for _, m in ipairs(items) do
+    redis.call('ZADD', KEYS[2], ARGV[3], m)
+end
+return items
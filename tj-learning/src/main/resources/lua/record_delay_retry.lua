@@ -0,0 +1,11 @@
+-- 处理失败的学习记录任务放回延迟队列，稍后重试
+-- KEYS[1]: 延迟队列 learning:record:delay:{shard}
+-- KEYS[2]: 处理中的任务 learning:record:inflight:{shard}
+-- ARGV[1]: 重试时刻，毫秒
+-- ARGV[2...]: 任务
+-- 期间又提交了新任务的小节，保留新任务的执行时刻
+for i = 2, #ARGV do
+    redis.call('ZREM', KEYS[2], ARGV[i])
+    redis.call('ZADD', KEYS[1], 'NX', ARGV[1], ARGV[i])
+end
+return #ARGV - 1
@@ -0,0 +1,65 @@
+package com.tianji.learning.benchmark;
+
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.learning.domain.po.LearningRecord;
+import com.tianji.learning.utils.RecordCacheCodec;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 学习记录缓存编解码的基准测试：原来的JSON字符串 vs {@link RecordCacheCodec}
+ * <p>
+ * 运行方式：mvn -pl tj-learning test-compile 后执行main方法，或在IDE中直接运行
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RecordCacheCodecBenchmark {
+
+    private LearningRecord record;
+    private byte[] json;
+    private byte[] binary;
+
+    @Setup
+    public void setup() {
+        record = new LearningRecord().setId(1585089922394492930L).setMoment(1832).setFinished(false);
+        json = JsonUtils.toJsonStr(record).getBytes(StandardCharsets.UTF_8);
+        binary = RecordCacheCodec.encode(record);
+    }
+
+    @Benchmark
+    public byte[] encodeJson() {
+        return JsonUtils.toJsonStr(record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return RecordCacheCodec.encode(record);
+    }
+
+    @Benchmark
+    public LearningRecord decodeJson() {
+        return JsonUtils.toBean(new String(json, StandardCharsets.UTF_8), LearningRecord.class);
+    }
+
+    @Benchmark
+    public LearningRecord decodeCodec() {
+        return RecordCacheCodec.decode(binary);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RecordCacheCodecBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
@@ -0,0 +1,67 @@
+package com.tianji.learning.utils;
+
+import com.tianji.common.utils.JsonUtils;
+import com.tianji.learning.domain.po.LearningRecord;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecordCacheCodecTest {
+
+    @Test
+    void roundTrip() {
+        long[] ids = {1L, 127L, 128L, 1585089922394492930L, Long.MAX_VALUE};
+        int[] moments = {0, 1, 63, 64, 3600, Integer.MAX_VALUE};
+        for (long id : ids) {
+            for (int moment : moments) {
+                for (boolean finished : new boolean[]{true, false}) {
+                    LearningRecord record = new LearningRecord().setId(id).setMoment(moment).setFinished(finished);
+                    LearningRecord decoded = RecordCacheCodec.decode(RecordCacheCodec.encode(record));
+                    assertEquals(id, decoded.getId());
+                    assertEquals(moment, decoded.getMoment());
+                    assertEquals(finished, decoded.getFinished());
+                }
+            }
+        }
+    }
+
+    @Test
+    void onlyCacheFields() {
+        LearningRecord record = new LearningRecord()
+                .setId(1585089922394492930L).setMoment(300).setFinished(true)
+                .setLessonId(1L).setSectionId(2L).setUserId(3L);
+        byte[] bytes = RecordCacheCodec.encode(record);
+        // 雪花id 9个字节，moment 2个字节
+        assertEquals(11, bytes.length);
+        LearningRecord decoded = RecordCacheCodec.decode(bytes);
+        assertNull(decoded.getLessonId());
+        assertNull(decoded.getSectionId());
+        assertNull(decoded.getUserId());
+    }
+
+    @Test
+    void nullFieldsAsDefault() {
+        LearningRecord decoded = RecordCacheCodec.decode(RecordCacheCodec.encode(new LearningRecord()));
+        assertEquals(0L, decoded.getId());
+        assertEquals(0, decoded.getMoment());
+        assertFalse(decoded.getFinished());
+    }
+
+    @Test
+    void emptyInput() {
+        assertNull(RecordCacheCodec.decode(null));
+        assertNull(RecordCacheCodec.decode(new byte[0]));
+    }
+
+    @Test
+    void decodeLegacyJson() {
+        LearningRecord record = new LearningRecord().setId(10L).setMoment(20).setFinished(true);
+        byte[] json = JsonUtils.toJsonStr(record).getBytes(StandardCharsets.UTF_8);
+        LearningRecord decoded = RecordCacheCodec.decode(json);
+        assertEquals(10L, decoded.getId());
+        assertEquals(20, decoded.getMoment());
+        assertTrue(decoded.getFinished());
+    }
+}
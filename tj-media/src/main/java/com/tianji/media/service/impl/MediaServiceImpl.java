@@ -4,9 +4,9 @@ import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
 import com.baomidou.mybatisplus.core.metadata.OrderItem;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.course.CourseClient;
 import com.tianji.api.client.learning.LearningClient;
-import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.course.MediaQuoteDTO;
 import com.tianji.api.dto.course.SectionInfoDTO;
 import com.tianji.api.dto.user.UserDTO;
@@ -51,7 +51,7 @@ public class MediaServiceImpl extends ServiceImpl<MediaMapper, Media> implements
 
     private final LearningClient learningClient;
 
-    private final UserClient userClient;
+    private final UserCache userCache;
 
     @Override
     public String getUploadSignature() {
@@ -145,7 +145,7 @@ public class MediaServiceImpl extends ServiceImpl<MediaMapper, Media> implements
         // 5.查询创建者信息
         Map<Long, String> userMap = null;
         if(CollUtils.isNotEmpty(createIds)) {
-            List<UserDTO> users = userClient.queryUserByIds(createIds);
+            List<UserDTO> users = userCache.queryUserByIds(createIds);
             AssertUtils.isNotEmpty(users, FileErrorInfo.USER_NOT_EXISTS);
             userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, UserDTO::getName));
         }
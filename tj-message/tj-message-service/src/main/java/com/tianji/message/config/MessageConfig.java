@@ -2,6 +2,7 @@ package com.tianji.message.config;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.ContextSnapshot;
 import com.tianji.message.domain.po.SmsThirdPlatform;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -34,6 +35,8 @@ public class MessageConfig {
         // 设置拒绝策略：当pool已经达到max size的时候，如何处理新任务
         // CALLER_RUNS：不在新线程中执行任务，而是有调用者所在的线程来执行
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        //传递用户等线程上下文
+        executor.setTaskDecorator(ContextSnapshot.taskDecorator());
         //执行初始化
         executor.initialize();
         log.info("初始化执行通知任务的线程池结束...");
@@ -55,6 +58,8 @@ public class MessageConfig {
         // 设置拒绝策略：当pool已经达到max size的时候，如何处理新任务
         // CALLER_RUNS：不在新线程中执行任务，而是有调用者所在的线程来执行
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        //传递用户等线程上下文
+        executor.setTaskDecorator(ContextSnapshot.taskDecorator());
         //执行初始化
         executor.initialize();
         log.info("初始化执行短信发送的线程池结束...");
@@ -2,7 +2,7 @@ package com.tianji.message.service.impl;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
-import com.tianji.api.client.user.UserClient;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.dto.user.UserDTO;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.utils.BeanUtils;
@@ -42,7 +42,7 @@ public class NoticeTaskServiceImpl extends ServiceImpl<NoticeTaskMapper, NoticeT
 
     private final Executor asyncNoticeExecutor;
     private final INoticeTemplateService noticeTemplateService;
-    private final UserClient userClient;
+    private final UserCache userCache;
     private final IPublicNoticeService publicNoticeService;
     private final IUserInboxService inboxService;
     private final ISmsService smsService;
@@ -84,7 +84,7 @@ public class NoticeTaskServiceImpl extends ServiceImpl<NoticeTaskMapper, NoticeT
             // 针对部分用户，需要查询用户信息
             List<Long> userIds = getBaseMapper().queryTaskTargetByTaskId(task.getId());
             if(CollUtils.isNotEmpty(userIds)){
-                users = userClient.queryUserByIds(userIds);
+                users = userCache.queryUserByIds(userIds);
             }
         }
 
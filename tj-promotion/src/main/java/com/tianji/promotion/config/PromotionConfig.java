@@ -1,8 +1,17 @@
 package com.tianji.promotion.config;
 
+import com.tianji.common.utils.ContextSnapshot;
+import com.tianji.promotion.constants.PromotionConstants;
+import com.tianji.promotion.utils.CouponSoldOutFlags;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.rabbit.config.SimpleRabbitListenerContainerFactory;
+import org.springframework.amqp.rabbit.connection.ConnectionFactory;
+import org.springframework.boot.autoconfigure.amqp.SimpleRabbitListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
@@ -25,26 +34,36 @@ public class PromotionConfig {
         executor.setThreadNamePrefix("exchange-code-handler-");
         // 5.拒绝策略
         executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // 6.传递线程上下文
+        executor.setTaskDecorator(ContextSnapshot.taskDecorator());
         executor.initialize();
         return executor;
     }
 
+    /**
+     * 订阅优惠券库存变化的通知，维护本地售罄标记
+     */
     @Bean
-    public Executor discountSolutionExecutor(){
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        // 1.核心线程池大小
-        executor.setCorePoolSize(12);
-        // 2.最大线程池大小
-        executor.setMaxPoolSize(12);
-        // 3.队列大小
-        executor.setQueueCapacity(99999);
-        // 4.线程名称
-        executor.setThreadNamePrefix("discount-solution-calculator-");
-        // 5.拒绝策略
-        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
-        executor.initialize();
-        return executor;
+    public RedisMessageListenerContainer couponStockListenerContainer(
+            RedisConnectionFactory connectionFactory, CouponSoldOutFlags soldOutFlags) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(soldOutFlags, new ChannelTopic(PromotionConstants.COUPON_STOCK_CHANNEL));
+        return container;
     }
 
-
+    /**
+     * 批量消费的监听容器，每批最多100条消息，或者等待50毫秒
+     */
+    @Bean
+    public SimpleRabbitListenerContainerFactory batchRabbitListenerContainerFactory(
+            SimpleRabbitListenerContainerFactoryConfigurer configurer, ConnectionFactory connectionFactory) {
+        SimpleRabbitListenerContainerFactory factory = new SimpleRabbitListenerContainerFactory();
+        configurer.configure(factory, connectionFactory);
+        factory.setBatchListener(true);
+        factory.setConsumerBatchEnabled(true);
+        factory.setBatchSize(100);
+        factory.setReceiveTimeout(50L);
+        return factory;
+    }
 }
@@ -6,6 +6,15 @@ public interface PromotionConstants {
     String COUPON_CACHE_KEY_PREFIX = "prs:coupon:";
     String USER_COUPON_CACHE_KEY_PREFIX = "prs:user:coupon:";
     String COUPON_RANGE_KEY = "coupon:code:range";
+    /**
+     * 兑换码生成进度，field：couponId，value：下一个待生成的序列号:最大序列号
+     */
+    String COUPON_CODE_PROGRESS_KEY = "coupon:code:progress";
+    String COUPON_CODE_GENERATE_LOCK_PREFIX = "lock:coupon:code:generate:";
+    /**
+     * 优惠券库存变化的通知频道，消息格式：couponId:0 表示已领完，couponId:1 表示有库存
+     */
+    String COUPON_STOCK_CHANNEL = "prs:coupon:stock";
 
     String[] RECEIVE_COUPON_ERROR_MSG = {
             "活动未开始",
@@ -16,4 +16,8 @@ public class UserCouponDTO {
      * 兑换码序列号（id）
      */
     private Integer serialNum;
+    /**
+     * 用户券id，发送消息时生成，重复投递时用于去重
+     */
+    private Long userCouponId;
 }
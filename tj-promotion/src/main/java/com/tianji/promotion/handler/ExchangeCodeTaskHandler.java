@@ -0,0 +1,19 @@
+package com.tianji.promotion.handler;
+
+import com.tianji.promotion.service.IExchangeCodeService;
+import com.xxl.job.core.handler.annotation.XxlJob;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+@Component
+@RequiredArgsConstructor
+public class ExchangeCodeTaskHandler {
+
+    private final IExchangeCodeService codeService;
+
+    @XxlJob("exchangeCodeResumeJobHandler")
+    public void handleExchangeCodeResumeJob(){
+        // 继续生成因服务重启等原因中断的兑换码
+        codeService.resumeGenerateCode();
+    }
+}
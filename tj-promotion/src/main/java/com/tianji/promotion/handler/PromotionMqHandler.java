@@ -3,28 +3,69 @@ package com.tianji.promotion.handler;
 import com.tianji.promotion.domain.dto.UserCouponDTO;
 import com.tianji.promotion.service.IUserCouponService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.core.ExchangeTypes;
 import org.springframework.amqp.rabbit.annotation.Exchange;
 import org.springframework.amqp.rabbit.annotation.Queue;
 import org.springframework.amqp.rabbit.annotation.QueueBinding;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
+import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.amqp.rabbit.retry.RepublishMessageRecoverer;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.List;
+
+import static com.tianji.common.constants.MqConstants.Exchange.ERROR_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Exchange.PROMOTION_EXCHANGE;
 import static com.tianji.common.constants.MqConstants.Key.COUPON_RECEIVE;
+import static com.tianji.common.constants.MqConstants.Key.ERROR_KEY_PREFIX;
 
+@Slf4j
 @RequiredArgsConstructor
 @Component
 public class PromotionMqHandler {
 
     private final IUserCouponService userCouponService;
+    private final RabbitTemplate rabbitTemplate;
+
+    @Value("${spring.application.name}")
+    private String appName;
 
+    /**
+     * 批量消费领券消息，最多攒够一批或者等待一小段时间后处理，处理完成（事务提交）后整批确认
+     */
     @RabbitListener(bindings = @QueueBinding(
             value=@Queue(name="coupon.receive.queue",durable = "true"),
             exchange = @Exchange(name = PROMOTION_EXCHANGE, type = ExchangeTypes.TOPIC),
             key=COUPON_RECEIVE
-    ))
-    public void listenCouponReceiveMessage(UserCouponDTO uc){
-        userCouponService.checkAndCreateUserCoupon(uc);
+    ), containerFactory = "batchRabbitListenerContainerFactory")
+    public void listenCouponReceiveMessage(List<UserCouponDTO> ucs){
+        try {
+            // 1.整批处理
+            userCouponService.checkAndCreateUserCoupons(ucs);
+        } catch (Exception e) {
+            // 2.整批失败（例如某张券库存不足），事务已回滚，逐条处理，失败的消息不影响其它消息
+            log.warn("批量处理领券消息失败，改为逐条处理，数量：{}，原因：{}", ucs.size(), e.getMessage());
+            for (UserCouponDTO uc : ucs) {
+                try {
+                    userCouponService.checkAndCreateUserCoupon(uc);
+                } catch (Exception ex) {
+                    // 3.处理失败的消息投递到失败交换机，与单条消费重试失败后的处理一致，
+                    // 投递失败则抛出异常，整批消息重新投递，已经处理成功的消息根据用户券id或兑换码去重
+                    log.error("处理领券消息失败，投递到失败队列，消息：{}", uc, ex);
+                    republishToErrorQueue(uc, ex);
+                }
+            }
+        }
+    }
+
+    private void republishToErrorQueue(UserCouponDTO uc, Exception cause) {
+        rabbitTemplate.convertAndSend(ERROR_EXCHANGE, ERROR_KEY_PREFIX + appName, uc, message -> {
+            message.getMessageProperties().setHeader(RepublishMessageRecoverer.X_EXCEPTION_MESSAGE, cause.getMessage());
+            message.getMessageProperties().setHeader(RepublishMessageRecoverer.X_ORIGINAL_EXCHANGE, PROMOTION_EXCHANGE);
+            message.getMessageProperties().setHeader(RepublishMessageRecoverer.X_ORIGINAL_ROUTING_KEY, COUPON_RECEIVE);
+            return message;
+        });
     }
 }
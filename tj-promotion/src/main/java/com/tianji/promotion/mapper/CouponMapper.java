@@ -17,4 +17,7 @@ public interface CouponMapper extends BaseMapper<Coupon> {
 
     @Update("UPDATE coupon SET issue_num = issue_num+1 WHERE id = #{couponId} AND issue_num<total_num")
     int incrIssueNum(@Param("couponId") Long couponId);
+
+    @Update("UPDATE coupon SET issue_num = issue_num + #{num} WHERE id = #{couponId} AND issue_num + #{num} <= total_num")
+    int incrIssueNumBy(@Param("couponId") Long couponId, @Param("num") int num);
 }
@@ -2,6 +2,9 @@ package com.tianji.promotion.mapper;
 
 import com.tianji.promotion.domain.po.ExchangeCode;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,8 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface ExchangeCodeMapper extends BaseMapper<ExchangeCode> {
 
+    /**
+     * 批量新增兑换码，已存在的序列号会被忽略，便于中断后重新生成
+     */
+    int insertIgnoreBatch(@Param("list") List<ExchangeCode> list);
 }
@@ -19,6 +19,8 @@ public interface UserCouponMapper extends BaseMapper<UserCoupon> {
 
     List<Coupon> queryMyCoupons(@Param("userId") Long userId);
 
+    int insertBatch(@Param("list") List<UserCoupon> list);
+
 }
 
 
@@ -3,6 +3,10 @@ package com.tianji.promotion.service;
 import com.tianji.promotion.domain.po.CouponScope;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
 /**
  * <p>
  * 优惠券作用范围信息 服务类
@@ -13,4 +17,20 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface ICouponScopeService extends IService<CouponScope> {
 
+    /**
+     * 批量查询优惠券的限定范围，优先从本地缓存中查询
+     * @param couponIds 优惠券id集合
+     * @return key:优惠券id，value:升序排列的范围业务id（分类id）
+     */
+    Map<Long, long[]> queryScopeBizIds(Collection<Long> couponIds);
+
+    /**
+     * 保存优惠券的限定范围，并清理本地缓存
+     */
+    void saveScopes(Long couponId, List<Long> bizIds);
+
+    /**
+     * 删除优惠券的限定范围，并清理本地缓存
+     */
+    void removeByCouponId(Long couponId);
 }
@@ -16,5 +16,10 @@ public interface IExchangeCodeService extends IService<ExchangeCode> {
 
     void asyncGenerateCode(Coupon coupon);
 
+    /**
+     * 继续生成中断的兑换码，例如服务重启导致的生成中断
+     */
+    void resumeGenerateCode();
+
     boolean updateExchangeMark(long serialNum, boolean b);
 }
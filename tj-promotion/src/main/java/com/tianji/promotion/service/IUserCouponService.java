@@ -9,6 +9,8 @@ import com.tianji.promotion.domain.query.UserCouponQuery;
 import com.tianji.promotion.domain.vo.CouponVO;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 /**
  * <p>
  * 用户领取优惠券的记录，是真正使用的优惠券信息 服务类
@@ -25,5 +27,10 @@ public interface IUserCouponService extends IService<UserCoupon> {
 
     void checkAndCreateUserCoupon(UserCouponDTO uc);
 
+    /**
+     * 批量校验并生成用户券，同一优惠券的发放数量只更新一次，用户券批量插入，任何一条失败则整体回滚
+     */
+    void checkAndCreateUserCoupons(List<UserCouponDTO> ucs);
+
     PageDTO<CouponVO> queryMyCouponPage(UserCouponQuery query);
 }
@@ -1,11 +1,19 @@
 package com.tianji.promotion.service.impl;
 
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.common.utils.CollUtils;
 import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.mapper.CouponScopeMapper;
 import com.tianji.promotion.service.ICouponScopeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
 /**
  * <p>
  * 优惠券作用范围信息 服务实现类
@@ -17,4 +25,62 @@ import org.springframework.stereotype.Service;
 @Service
 public class CouponScopeServiceImpl extends ServiceImpl<CouponScopeMapper, CouponScope> implements ICouponScopeService {
 
+    private static final long[] EMPTY_SCOPES = new long[0];
+
+    /**
+     * 优惠券限定范围的本地缓存，key:优惠券id，value:升序排列的范围业务id。
+     * 只有草稿状态的优惠券才能修改范围，此时还没有用户领券，因此其它实例的缓存不会影响用户，过期时间只是兜底。
+     */
+    private final Cache<Long, long[]> scopeCache = Caffeine.newBuilder()
+            .initialCapacity(256)
+            .maximumSize(10_000)
+            .expireAfterWrite(Duration.ofMinutes(30))
+            .build();
+
+    @Override
+    public Map<Long, long[]> queryScopeBizIds(Collection<Long> couponIds) {
+        if (CollUtils.isEmpty(couponIds)) {
+            return CollUtils.emptyMap();
+        }
+        // 未命中的优惠券，一次IN查询批量加载
+        return scopeCache.getAll(couponIds, this::loadScopeBizIds);
+    }
+
+    private Map<Long, long[]> loadScopeBizIds(Set<? extends Long> couponIds) {
+        // 1.批量查询
+        List<CouponScope> scopes = lambdaQuery().in(CouponScope::getCouponId, couponIds).list();
+        Map<Long, List<Long>> scopeMap = scopes.stream().collect(Collectors.groupingBy(
+                CouponScope::getCouponId, Collectors.mapping(CouponScope::getBizId, Collectors.toList())));
+        // 2.转为有序数组，没有范围的券也要缓存，避免反复查询
+        Map<Long, long[]> result = new HashMap<>(couponIds.size());
+        for (Long couponId : couponIds) {
+            List<Long> bizIds = scopeMap.get(couponId);
+            if (CollUtils.isEmpty(bizIds)) {
+                result.put(couponId, EMPTY_SCOPES);
+                continue;
+            }
+            long[] arr = new long[bizIds.size()];
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = bizIds.get(i);
+            }
+            Arrays.sort(arr);
+            result.put(couponId, arr);
+        }
+        return result;
+    }
+
+    @Override
+    public void saveScopes(Long couponId, List<Long> bizIds) {
+        List<CouponScope> list = bizIds.stream()
+                .map(bizId -> new CouponScope().setBizId(bizId).setCouponId(couponId).setType(1))
+                .collect(Collectors.toList());
+        saveBatch(list);
+        scopeCache.invalidate(couponId);
+    }
+
+    @Override
+    public void removeByCouponId(Long couponId) {
+        remove(new LambdaQueryWrapper<CouponScope>().eq(CouponScope::getCouponId, couponId));
+        scopeCache.invalidate(couponId);
+    }
 }
@@ -26,6 +26,7 @@ import com.tianji.promotion.service.ICouponScopeService;
 import com.tianji.promotion.service.ICouponService;
 import com.tianji.promotion.service.IExchangeCodeService;
 import com.tianji.promotion.service.IUserCouponService;
+import com.tianji.promotion.utils.CouponSoldOutFlags;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
@@ -62,6 +63,8 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
 
     private final IUserCouponService userCouponService;
 
+    private final CouponSoldOutFlags soldOutFlags;
+
     @Override
     @Transactional
     public void saveCoupon(CouponFormDTO dto) {
@@ -82,11 +85,8 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         if (CollUtils.isEmpty(scopes)) {
             throw new BadRequestException("限定范围不能为空");
         }
-        List<CouponScope> list = scopes.stream()
-                .map(bizId -> new CouponScope().setBizId(bizId).setCouponId(couponId).setType(1))
-                .collect(Collectors.toList());
         // 2.2.保存限定范围中间表
-        scopeService.saveBatch(list);
+        scopeService.saveScopes(couponId, scopes);
 
     }
 
@@ -164,6 +164,8 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         map.put("userLimit", String.valueOf(coupon.getUserLimit()));
         // 2.写缓存
         redisTemplate.opsForHash().putAll(PromotionConstants.COUPON_CACHE_KEY_PREFIX + coupon.getId(),map);
+        // 3.清除各实例的售罄标记
+        soldOutFlags.publishAvailable(List.of(coupon.getId()));
     }
 
     @Override
@@ -208,7 +210,7 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
         if(!coupon.getSpecific()){
             return;
         }
-        scopeService.remove(new LambdaQueryWrapper<CouponScope>().eq(CouponScope::getCouponId, id));
+        scopeService.removeByCouponId(id);
     }
 
     @Override
@@ -233,6 +235,8 @@ public class CouponServiceImpl extends ServiceImpl<CouponMapper, Coupon> impleme
             }
             return null;
         });
+        // 3.清除各实例的售罄标记
+        soldOutFlags.publishAvailable(coupons.stream().map(Coupon::getId).collect(Collectors.toList()));
     }
 
     @Override
@@ -5,22 +5,17 @@ import com.tianji.common.utils.UserContext;
 import com.tianji.api.dto.promotion.CouponDiscountDTO;
 import com.tianji.api.dto.promotion.OrderCourseDTO;
 import com.tianji.promotion.domain.po.Coupon;
-import com.tianji.promotion.domain.po.CouponScope;
 import com.tianji.promotion.mapper.UserCouponMapper;
 import com.tianji.promotion.service.ICouponScopeService;
 import com.tianji.promotion.service.IDiscountService;
 import com.tianji.promotion.strategy.discount.Discount;
 import com.tianji.promotion.strategy.discount.DiscountStrategy;
-import com.tianji.promotion.utils.PermuteUtil;
+import com.tianji.promotion.utils.DiscountSolutionSolver;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.Executor;
-import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -32,8 +27,6 @@ public class DiscountServiceImpl implements IDiscountService {
 
     private final ICouponScopeService scopeService;
 
-    private final Executor discountSolutionExecutor;
-
     @Override
     public List<CouponDiscountDTO> findDiscountSolution(List<OrderCourseDTO> orderCourses) {
         // 1.查询我的所有可用优惠券
@@ -59,38 +52,10 @@ public class DiscountServiceImpl implements IDiscountService {
             return CollUtils.emptyList();
         }
 
-        // 3.2.计算优惠方案全排列
-        availableCoupons = new ArrayList<>(availableCouponMap.keySet());
-        List<List<Coupon>> solutions = PermuteUtil.permute(availableCoupons);
-        // 3.3.添加单券的方案
-        for (Coupon c : availableCoupons) {
-            solutions.add(List.of(c));
-        }
-        // 4.计算方案的优惠明细
-        List<CouponDiscountDTO> list = Collections.synchronizedList(new ArrayList<>(solutions.size()));
-//        同步方式
-//        for (List<Coupon> solution : solutions) {
-//            list.add(calculateSolutionDiscount(availableCouponMap, orderCourses, solution));
-//        }
-        //异步优化
-        CountDownLatch latch = new CountDownLatch(solutions.size());
-        for (List<Coupon> solution : solutions) {
-            CompletableFuture.supplyAsync(
-                    ()->calculateSolutionDiscount(availableCouponMap, orderCourses, solution),
-                    discountSolutionExecutor
-            ).thenAccept(dto->{
-                list.add(dto);
-                latch.countDown();
-            });
-        }
-        // 4.4.等待运算结束
-        try {
-            latch.await(1, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            log.error("优惠方案计算被中断，{}", e.getMessage());
-        }
+        // 3.2.搜索所有优惠方案（包括单券方案），每组生效的优惠券只保留优惠金额最大的方案
+        List<CouponDiscountDTO> list = DiscountSolutionSolver.solve(availableCouponMap, orderCourses);
 
-        // 5.筛选最优解
+        // 4.筛选最优解
         return findBestSolution(list);
     }
 
@@ -128,69 +93,6 @@ public class DiscountServiceImpl implements IDiscountService {
                 .collect(Collectors.toList());
     }
 
-    /**
-     * 计算方案的优惠明细
-     * @param couponMap : key:优惠券,value:该优惠券可用课程列表
-     * @param courses  订单中的课程列表
-     * @param solution  一个优惠方案，可能是优惠券叠加，也可能是单优惠券。
-     * @return
-     */
-    private CouponDiscountDTO calculateSolutionDiscount(
-            Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses, List<Coupon> solution) {
-        // 1.初始化DTO
-        CouponDiscountDTO dto = new CouponDiscountDTO();
-        // 2.初始化折扣明细的映射,
-        Map<Long, Integer> detailMap = courses.stream().collect(Collectors.toMap(OrderCourseDTO::getId, oc -> 0));
-        // 3.计算折扣
-        for(Coupon coupon : solution){
-            // 3.1.获取优惠券限定范围对应的课程
-            List<OrderCourseDTO> availableCourses = couponMap.get(coupon);
-            // 3.2.计算课程总价(课程原价 - 折扣明细)
-            int totalAmount = availableCourses.stream()
-                    .mapToInt(oc->oc.getPrice() - detailMap.get(oc.getId())).sum();
-            // 3.3.判断是否可用
-            Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
-            if(!discount.canUse(totalAmount,coupon)){
-                // 券不可用，跳过
-                continue;
-            }
-            // 3.4.计算优惠金额
-            int discountAmount = discount.calculateDiscount(totalAmount,coupon);
-            // 3.5.计算优惠明细, 更新到detailMap
-            calculateDiscountDetails(detailMap, availableCourses, totalAmount, discountAmount);
-            // 3.6.更新DTO数据
-            dto.getIds().add(coupon.getCreater());  // 注意这里的Creater暂时保存的是用户优惠券id，不是原始的创建者。
-            dto.getRules().add(discount.getRule(coupon));
-            dto.setDiscountAmount(discountAmount + dto.getDiscountAmount());
-        }
-
-        return dto;
-    }
-
-    /**
-     * 计算优惠明细，即把优惠数额按比例分摊到订单的各课程中
-     * @param detailMap 优惠明细
-     * @param courses 课程列表
-     * @param totalAmount 课程总金额
-     * @param discountAmount 折扣金额
-     */
-    private void calculateDiscountDetails(Map<Long, Integer> detailMap, List<OrderCourseDTO> courses, int totalAmount, int discountAmount) {
-        int remainDiscount = discountAmount;
-        for(int i=0;i<courses.size();i++){
-            OrderCourseDTO course = courses.get(i);
-            int discount = 0;
-            if(i==courses.size()-1){
-                // 是最后一个课程，总折扣金额 - 之前所有商品的折扣金额之和
-                discount = remainDiscount;
-            }else{
-                // 计算折扣明细（课程价格在总价中占的比例，乘以总的折扣）
-                discount = discountAmount * course.getPrice() / totalAmount;
-                remainDiscount = discountAmount - discount;
-            }
-            detailMap.put(course.getId(),discount+detailMap.get(course.getId()));
-        }
-    }
-
     /**
      * 根据使用范围计算出来的价格刷选出优惠券
      * @param coupons
@@ -199,26 +101,30 @@ public class DiscountServiceImpl implements IDiscountService {
      */
     private Map<Coupon, List<OrderCourseDTO>> findAvailableCoupon(List<Coupon> coupons, List<OrderCourseDTO> courses) {
         Map<Coupon, List<OrderCourseDTO>> map = new HashMap<>(coupons.size());
+        // 1.批量查询限定了范围的券的可用范围（分类id）
+        List<Long> specificIds = coupons.stream()
+                .filter(Coupon::getSpecific).map(Coupon::getId).distinct().collect(Collectors.toList());
+        Map<Long, long[]> scopeMap = scopeService.queryScopeBizIds(specificIds);
         for(Coupon coupon : coupons){
-            // 1.找出优惠券的可用的课程
+            // 2.找出优惠券的可用的课程
             List<OrderCourseDTO> availableCourses = courses;
             if(coupon.getSpecific()){
-                // 1.1.限定了范围，查询券的可用范围
-                List<CouponScope> scopes = scopeService.lambdaQuery().eq(CouponScope::getCouponId,coupon.getId()).list();
-                // 1.2.获取范围对应的分类id
-                Set<Long> scopeIds = scopes.stream().map(CouponScope::getBizId).collect(Collectors.toSet());
-                // 1.3.筛选课程
-                availableCourses = courses.stream()
-                        .filter(c->scopeIds.contains(c.getCateId()))
-                        .collect(Collectors.toList());
+                // 2.1.筛选分类在范围内的课程，范围是有序数组，二分查找
+                long[] scopeIds = scopeMap.get(coupon.getId());
+                availableCourses = new ArrayList<>(courses.size());
+                for (OrderCourseDTO c : courses) {
+                    if (scopeIds != null && c.getCateId() != null && Arrays.binarySearch(scopeIds, c.getCateId()) >= 0) {
+                        availableCourses.add(c);
+                    }
+                }
             }
             if (CollUtils.isEmpty(availableCourses)) {
                 // 没有任何可用课程，抛弃
                 continue;
             }
-            // 2.计算课程总价
+            // 3.计算课程总价
             int totalAmount = availableCourses.stream().mapToInt(OrderCourseDTO::getPrice).sum();
-            // 3.判断是否可用
+            // 4.判断是否可用
             Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
             if(discount.canUse(totalAmount,coupon)){
                 map.put(coupon,availableCourses);
@@ -227,10 +133,3 @@ public class DiscountServiceImpl implements IDiscountService {
         return map;
     }
 }
-
-
-
-
-
-
-
@@ -1,18 +1,24 @@
 package com.tianji.promotion.service.impl;
 
+import com.tianji.common.utils.CollUtils;
 import com.tianji.promotion.domain.po.Coupon;
 import com.tianji.promotion.domain.po.ExchangeCode;
+import com.tianji.promotion.mapper.CouponMapper;
 import com.tianji.promotion.mapper.ExchangeCodeMapper;
 import com.tianji.promotion.service.IExchangeCodeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.promotion.utils.CodeUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.redis.core.BoundHashOperations;
 import org.springframework.data.redis.core.BoundValueOperations;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.Set;
 
 import static com.tianji.promotion.constants.PromotionConstants.*;
 
@@ -24,43 +30,113 @@ import static com.tianji.promotion.constants.PromotionConstants.*;
  * @author author
  * @since 2023-12-25
  */
+@Slf4j
 @Service
 public class ExchangeCodeServiceImpl extends ServiceImpl<ExchangeCodeMapper, ExchangeCode> implements IExchangeCodeService {
 
+    /**
+     * 每批生成并写入数据库的兑换码数量
+     */
+    private static final int CHUNK_SIZE = 2000;
+
     private final StringRedisTemplate redisTemplate;
     private final BoundValueOperations<String, String> serialOps;
+    private final BoundHashOperations<String, String, String> progressOps;
+    private final RedissonClient redissonClient;
+    private final CouponMapper couponMapper;
 
-    public ExchangeCodeServiceImpl(StringRedisTemplate redisTemplate) {
+    public ExchangeCodeServiceImpl(StringRedisTemplate redisTemplate, RedissonClient redissonClient, CouponMapper couponMapper) {
         this.redisTemplate = redisTemplate;
         this.serialOps = redisTemplate.boundValueOps(COUPON_CODE_SERIAL_KEY);
+        this.progressOps = redisTemplate.boundHashOps(COUPON_CODE_PROGRESS_KEY);
+        this.redissonClient = redissonClient;
+        this.couponMapper = couponMapper;
     }
 
     @Override
     @Async("generateExchangeCodeExecutor")
     public void asyncGenerateCode(Coupon coupon) {
-        // 发放数量
-        Integer totalNum = coupon.getTotalNum();
-        // 1.获取Redis自增序列号,
-        Long result = serialOps.increment(totalNum);
-        if (result == null) {
+        generateCode(coupon, false);
+    }
+
+    @Override
+    public void resumeGenerateCode() {
+        // 1.查询所有未完成的生成进度
+        Set<String> couponIds = progressOps.keys();
+        if (CollUtils.isEmpty(couponIds)) {
+            return;
+        }
+        for (String couponId : couponIds) {
+            // 2.查询优惠券，已经删除的优惠券不再生成
+            Coupon coupon = couponMapper.selectById(Long.valueOf(couponId));
+            if (coupon == null) {
+                progressOps.delete(couponId);
+                continue;
+            }
+            // 3.继续生成
+            generateCode(coupon, true);
+        }
+    }
+
+    private void generateCode(Coupon coupon, boolean resume) {
+        String couponId = coupon.getId().toString();
+        // 1.同一张优惠券同时只能有一个线程生成，正在生成的直接跳过
+        RLock lock = redissonClient.getLock(COUPON_CODE_GENERATE_LOCK_PREFIX + couponId);
+        if (!lock.tryLock()) {
             return;
         }
-        int maxSerialNum = result.intValue();
-        List<ExchangeCode> list = new ArrayList<>(totalNum);
-        for(int serialNum = maxSerialNum-totalNum+1; serialNum<=maxSerialNum;serialNum++){
-            // 2.生成兑换码
-            String code = CodeUtil.generateCode(serialNum,coupon.getId());
-            ExchangeCode exchangeCode = new ExchangeCode();
-            exchangeCode.setCode(code);
-            exchangeCode.setId(serialNum);
-            exchangeCode.setExchangeTargetId(coupon.getId());
-            exchangeCode.setExpiredTime(coupon.getIssueEndTime()); // todo: 因该是 coupon.getTermEndTime()吧？
-            list.add(exchangeCode);
+        try {
+            // 2.获取生成进度，没有进度说明是首次生成，需要先获取Redis自增序列号
+            long next, maxSerialNum;
+            String progress = progressOps.get(couponId);
+            if (progress != null) {
+                String[] arr = progress.split(":");
+                next = Long.parseLong(arr[0]);
+                maxSerialNum = Long.parseLong(arr[1]);
+            } else if (resume) {
+                // 加锁前已经生成完毕
+                return;
+            } else {
+                Long result = serialOps.increment(coupon.getTotalNum());
+                if (result == null) {
+                    return;
+                }
+                maxSerialNum = result;
+                next = maxSerialNum - coupon.getTotalNum() + 1;
+                progressOps.put(couponId, next + ":" + maxSerialNum);
+            }
+            long begin = maxSerialNum - coupon.getTotalNum() + 1;
+            // 3.分批生成，兑换码对象和字符数组都复用，每批单独写入数据库
+            ExchangeCode[] chunk = new ExchangeCode[(int) Math.min(CHUNK_SIZE, maxSerialNum - next + 1)];
+            for (int i = 0; i < chunk.length; i++) {
+                ExchangeCode exchangeCode = new ExchangeCode();
+                exchangeCode.setExchangeTargetId(coupon.getId());
+                exchangeCode.setExpiredTime(coupon.getIssueEndTime()); // todo: 因该是 coupon.getTermEndTime()吧？
+                chunk[i] = exchangeCode;
+            }
+            char[] buf = new char[CodeUtil.CODE_LENGTH];
+            while (next <= maxSerialNum) {
+                int size = (int) Math.min(chunk.length, maxSerialNum - next + 1);
+                for (int i = 0; i < size; i++) {
+                    int serialNum = (int) (next + i);
+                    int len = CodeUtil.generateCode(serialNum, coupon.getId(), buf);
+                    chunk[i].setId(serialNum);
+                    chunk[i].setCode(new String(buf, 0, len));
+                }
+                // 3.1.保存数据库，已存在的序列号忽略，因此中断后可以从记录的进度重新生成
+                getBaseMapper().insertIgnoreBatch(Arrays.asList(chunk).subList(0, size));
+                // 3.2.记录进度
+                next += size;
+                progressOps.put(couponId, next + ":" + maxSerialNum);
+                log.debug("兑换码生成进度，优惠券：{}，{}/{}", couponId, next - begin, coupon.getTotalNum());
+            }
+            // 4.写入Redis缓存，member：couponId，score：兑换码的最大序列号
+            redisTemplate.opsForZSet().add(COUPON_RANGE_KEY, couponId, maxSerialNum);
+            progressOps.delete(couponId);
+            log.info("兑换码生成完毕，优惠券：{}，数量：{}", couponId, coupon.getTotalNum());
+        } finally {
+            lock.unlock();
         }
-        // 3.保存数据库
-        saveBatch(list);
-        // 4.写入Redis缓存，member：couponId，score：兑换码的最大序列号
-        redisTemplate.opsForZSet().add(COUPON_RANGE_KEY, coupon.getId().toString(), maxSerialNum);
     }
 
     @Override
@@ -69,10 +145,3 @@ public class ExchangeCodeServiceImpl extends ServiceImpl<ExchangeCodeMapper, Exc
         return result!=null && result;
     }
 }
-
-
-
-
-
-
-
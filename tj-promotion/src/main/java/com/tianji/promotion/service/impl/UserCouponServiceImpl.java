@@ -1,10 +1,11 @@
 package com.tianji.promotion.service.impl;
 
-import cn.hutool.core.bean.copier.CopyOptions;
 import com.baomidou.mybatisplus.core.metadata.OrderItem;
+import com.baomidou.mybatisplus.core.toolkit.IdWorker;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.autoconfigure.outbox.OutboxPublisher;
 import com.tianji.common.autoconfigure.redisson.annotations.Lock;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
@@ -27,19 +28,24 @@ import com.tianji.promotion.mapper.UserCouponMapper;
 import com.tianji.promotion.service.IExchangeCodeService;
 import com.tianji.promotion.service.IUserCouponService;
 import com.tianji.promotion.utils.CodeUtil;
+import com.tianji.promotion.utils.CouponSoldOutFlags;
 import com.tianji.promotion.utils.MyLock;
 import com.tianji.promotion.utils.MyLockType;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.aop.framework.AopContext;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
 /**
@@ -51,6 +57,7 @@ import java.util.stream.Collectors;
  * @since 2023-12-26
  */
 @Service
+@Slf4j
 @RequiredArgsConstructor
 public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCoupon> implements IUserCouponService {
 
@@ -62,64 +69,75 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
 
     private final RabbitMqHelper mqHelper;
 
+    private final OutboxPublisher outboxPublisher;
+
+    private final CouponSoldOutFlags soldOutFlags;
+
+    private static final DefaultRedisScript<Long> RECEIVE_COUPON_SCRIPT;
+
+    static {
+        RECEIVE_COUPON_SCRIPT = new DefaultRedisScript<>();
+        RECEIVE_COUPON_SCRIPT.setLocation(new ClassPathResource("lua/receive_coupon.lua"));
+        RECEIVE_COUPON_SCRIPT.setResultType(Long.class);
+    }
+
     @Override
-    @Lock(name = "lock:coupon:#{userId}")
     public void receiveCoupon(Long couponId) {
-        // 1.查询优惠券
-        Coupon coupon = queryCouponByCache(couponId);
-        if (coupon == null) {
-            throw new BadRequestException("优惠券不存在");
-        }
-        // 2.校验发放时间
-        LocalDateTime now = LocalDateTime.now();
-        if(now.isBefore(coupon.getIssueBeginTime()) || now.isAfter(coupon.getIssueEndTime())){
-            throw new BadRequestException("优惠券发放已经结束或尚未开始");
-        }
-        // 3.校验库存
-        if(coupon.getTotalNum()<=0){
+        // 1.本地售罄标记，已领完的券直接拒绝
+        if (soldOutFlags.isSoldOut(couponId)) {
             throw new BadRequestException("优惠券库存不足");
         }
-
         Long userId = UserContext.getUser();
-        // 4.校验每人限领数量
-        // 4.1.统计当前用户对当前优惠券的已经领取的数量
+        // 2.基于Lua脚本，原子的校验发放时间、库存、每人限领数量，并扣减库存
         String key = PromotionConstants.USER_COUPON_CACHE_KEY_PREFIX + couponId;
-        Long count = redisTemplate.opsForHash().increment(key,userId.toString(),1);
-        // 4.2.校验限领数量
-        if (count != null && count > coupon.getUserLimit()) {
-            throw new BadRequestException("超出领取数量");
-        }
-        // 5.扣减优惠券库存
-        try {
-            redisTemplate.opsForHash().increment(
-                    PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId, "totalNum", -1);
-        } catch (Exception e) {
-            redisTemplate.opsForHash().increment(key,userId.toString(),-1);
+        Long r = redisTemplate.execute(RECEIVE_COUPON_SCRIPT,
+                List.of(PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId, key),
+                userId.toString(), String.valueOf(System.currentTimeMillis()),
+                PromotionConstants.COUPON_STOCK_CHANNEL, couponId.toString());
+        if (r == null) {
             throw new CommonException("redis操作异常");
         }
+        int result = r.intValue();
+        if (result != 0) {
+            if (result == 2) {
+                soldOutFlags.markSoldOut(couponId);
+            }
+            throw new BadRequestException(PromotionConstants.RECEIVE_COUPON_ERROR_MSG[result - 1]);
+        }
 
-        // 6.发送MQ消息
+        // 3.发送MQ消息，发送失败回滚库存
+        UserCouponDTO uc = new UserCouponDTO();
+        uc.setUserId(userId);
+        uc.setCouponId(couponId);
+        uc.setUserCouponId(IdWorker.getId());
+        CompletableFuture<Void> confirm;
         try {
-            UserCouponDTO uc = new UserCouponDTO();
-            uc.setUserId(userId);
-            uc.setCouponId(couponId);
-            mqHelper.send(MqConstants.Exchange.PROMOTION_EXCHANGE,MqConstants.Key.COUPON_RECEIVE,uc);
+            confirm = mqHelper.send(MqConstants.Exchange.PROMOTION_EXCHANGE,MqConstants.Key.COUPON_RECEIVE,uc);
         } catch (Exception e) {
-            redisTemplate.opsForHash().increment(
-                    PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId, "totalNum", 1);
-            redisTemplate.opsForHash().increment(key,userId.toString(),-1);
+            rollbackReceive(couponId, userId);
             throw new CommonException("发送MQ消息异常");
         }
+        // 4.不等待broker确认，只有明确被拒绝才回滚库存，确认超时的消息仍可能被消费，不能回滚
+        confirm.whenComplete((v, e) -> {
+            if (e == null) {
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+                log.error("领券消息确认超时，不回滚库存，用户：{}，优惠券：{}", userId, couponId);
+                return;
+            }
+            log.error("领券消息发送失败，回滚库存，用户：{}，优惠券：{}", userId, couponId, cause);
+            rollbackReceive(couponId, userId);
+        });
     }
 
-    private Coupon queryCouponByCache(Long couponId) {
-        String key = PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId;
-        Map<Object,Object> objMap = redisTemplate.opsForHash().entries(key);
-        if (objMap.isEmpty()) {
-            return null;
-        }
-        // 3.数据反序列化
-        return BeanUtils.toBean(objMap,Coupon.class, CopyOptions.create());
+    private void rollbackReceive(Long couponId, Long userId) {
+        redisTemplate.opsForHash().increment(
+                PromotionConstants.COUPON_CACHE_KEY_PREFIX + couponId, "totalNum", 1);
+        redisTemplate.opsForHash().increment(
+                PromotionConstants.USER_COUPON_CACHE_KEY_PREFIX + couponId, userId.toString(), -1);
+        soldOutFlags.publishAvailable(List.of(couponId));
     }
 
     @Lock(name = "lock:coupon:#{userId}")
@@ -153,6 +171,10 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
     }
 
     private void saveUserCoupon(Coupon coupon, Long userId) {
+        save(buildUserCoupon(coupon, userId));
+    }
+
+    private UserCoupon buildUserCoupon(Coupon coupon, Long userId) {
         UserCoupon uc = new UserCoupon();
         // 1.基本信息
         uc.setUserId(userId);
@@ -167,8 +189,7 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
         }
         uc.setTermBeginTime(termBeginTime);
         uc.setTermEndTime(termEndTime);
-        // 3.保存
-        save(uc);
+        return uc;
     }
 
     @Override
@@ -201,23 +222,39 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
             Long userId = UserContext.getUser();
 //            // 5.3.校验并生成用户券，更新兑换码状态
 //            checkAndCreateUserCoupon(coupon, userId, serialNum);
-            // 6.发送MQ消息通知
+            // 6.发送MQ消息通知，开启outbox时写入outbox后由relay发送，否则同步发送并等待broker确认
             UserCouponDTO uc = new UserCouponDTO();
             uc.setUserId(userId);
             uc.setCouponId(couponId);
             uc.setSerialNum((int) serialNum);
-            mqHelper.send(MqConstants.Exchange.PROMOTION_EXCHANGE, MqConstants.Key.COUPON_RECEIVE, uc);
+            uc.setUserCouponId(IdWorker.getId());
+            outboxPublisher.publish(MqConstants.Exchange.PROMOTION_EXCHANGE, MqConstants.Key.COUPON_RECEIVE, uc);
 
         } catch (BizIllegalException e) {
             // 重置兑换的标记 0
             codeService.updateExchangeMark(serialNum, false);
             throw e;
+        } catch (Exception e) {
+            // 消息未保存、发送失败或未被broker确认，重置兑换的标记 0
+            codeService.updateExchangeMark(serialNum, false);
+            throw new CommonException("发送MQ消息异常");
         }
     }
 
     // 这里不需要加锁了
     @Override
+    @Transactional
     public void checkAndCreateUserCoupon(UserCouponDTO uc) {
+        // 0.兑换码消息可能重复投递，先把兑换码标记为已兑换，已经兑换过的直接忽略
+        if (uc.getSerialNum() != null && !markCodeUsed(uc)) {
+            log.warn("兑换码已经兑换过，忽略重复消息，兑换码：{}", uc.getSerialNum());
+            return;
+        }
+        // 0.1.普通领券消息根据用户券id去重，用户券已经存在说明处理过
+        if (uc.getUserCouponId() != null && getById(uc.getUserCouponId()) != null) {
+            log.warn("用户券已经存在，忽略重复消息，用户券：{}", uc.getUserCouponId());
+            return;
+        }
         // 1.查询优惠券
         Coupon coupon = couponMapper.selectById(uc.getCouponId());
         if (coupon == null) {
@@ -228,18 +265,65 @@ public class UserCouponServiceImpl extends ServiceImpl<UserCouponMapper, UserCou
         if (r == 0) {
             throw new BizIllegalException("优惠券库存不足");
         }
-        // 6.新增一个用户券
-        saveUserCoupon(coupon, uc.getUserId());
+        // 6.新增一个用户券，使用消息中的id，重复投递时主键冲突，不会重复发放
+        UserCoupon userCoupon = buildUserCoupon(coupon, uc.getUserId());
+        userCoupon.setId(uc.getUserCouponId());
+        save(userCoupon);
+    }
 
-        // 7 更新兑换码状态
-        if(uc.getSerialNum()!=null){
-            codeService.lambdaUpdate()
-                    .set(ExchangeCode::getUserId,  uc.getUserId())
-                    .set(ExchangeCode::getStatus, ExchangeCodeStatus.USED)
-                    .eq(ExchangeCode::getId, uc.getSerialNum())
-                    .update();
-        }
+    /**
+     * 兑换码未兑换时标记为已兑换
+     *
+     * @return 是否标记成功，失败说明已经兑换过
+     */
+    private boolean markCodeUsed(UserCouponDTO uc) {
+        return codeService.lambdaUpdate()
+                .set(ExchangeCode::getUserId, uc.getUserId())
+                .set(ExchangeCode::getStatus, ExchangeCodeStatus.USED)
+                .eq(ExchangeCode::getId, uc.getSerialNum())
+                .eq(ExchangeCode::getStatus, ExchangeCodeStatus.UNUSED)
+                .update();
+    }
 
+    @Override
+    @Transactional
+    public void checkAndCreateUserCoupons(List<UserCouponDTO> ucs) {
+        // 0.消息可能重复投递，过滤掉已经创建的用户券和已经兑换过的兑换码
+        Set<Long> ucIds = ucs.stream()
+                .map(UserCouponDTO::getUserCouponId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Set<Long> existIds = ucIds.isEmpty() ? Collections.emptySet() : listByIds(ucIds).stream()
+                .map(UserCoupon::getId).collect(Collectors.toSet());
+        ucs = ucs.stream()
+                .filter(uc -> !existIds.contains(uc.getUserCouponId()))
+                .filter(uc -> uc.getSerialNum() == null || markCodeUsed(uc))
+                .collect(Collectors.toList());
+        if (ucs.isEmpty()) {
+            return;
+        }
+        // 1.按优惠券分组
+        Map<Long, List<UserCouponDTO>> ucMap = ucs.stream().collect(Collectors.groupingBy(UserCouponDTO::getCouponId));
+        // 2.查询优惠券
+        List<Coupon> coupons = couponMapper.selectBatchIds(ucMap.keySet());
+        if (coupons.size() < ucMap.size()) {
+            throw new BizIllegalException("优惠券不存在！");
+        }
+        List<UserCoupon> userCoupons = new ArrayList<>(ucs.size());
+        for (Coupon coupon : coupons) {
+            List<UserCouponDTO> list = ucMap.get(coupon.getId());
+            // 3.每张优惠券只更新一次已经发放的数量
+            int r = couponMapper.incrIssueNumBy(coupon.getId(), list.size());
+            if (r == 0) {
+                throw new BizIllegalException("优惠券库存不足");
+            }
+            for (UserCouponDTO dto : list) {
+                // 4.用户券，使用消息中的id，旧消息没有id时提前生成，用于批量插入
+                UserCoupon uc = buildUserCoupon(coupon, dto.getUserId());
+                uc.setId(dto.getUserCouponId() != null ? dto.getUserCouponId() : IdWorker.getId(uc));
+                userCoupons.add(uc);
+            }
+        }
+        // 5.批量新增用户券
+        getBaseMapper().insertBatch(userCoupons);
     }
 
     @Override
@@ -2,11 +2,25 @@ package com.tianji.promotion.utils;
 
 import cn.hutool.core.text.StrBuilder;
 
+import java.util.Arrays;
+
 /**
  * 将整数转为base32字符的工具，因为是32进制，所以每5个bit位转一次
  */
 public class Base32 {
     private final static String baseChars = "6CSB7H8DAKXZF3N95RTMVUQG2YE4JWPL";
+    private final static char[] BASE_CHARS = baseChars.toCharArray();
+    /**
+     * 字符到数值的反查表，非法字符为-1
+     */
+    private final static byte[] DECODE_TABLE = new byte[128];
+
+    static {
+        Arrays.fill(DECODE_TABLE, (byte) -1);
+        for (int i = 0; i < BASE_CHARS.length; i++) {
+            DECODE_TABLE[BASE_CHARS[i]] = (byte) i;
+        }
+    }
 
     public static String encode(long raw) {
         StrBuilder sb = new StrBuilder();
@@ -18,16 +32,60 @@ public class Base32 {
         return sb.toString();
     }
 
-    public static long decode(String code) {
+    /**
+     * 将整数转码后写入字符数组，不产生中间对象，用于批量生成
+     *
+     * @param raw 原始数值
+     * @param buf 目标数组
+     * @param offset 写入的起始位置
+     * @return 写入的字符数
+     */
+    public static int encode(long raw, char[] buf, int offset) {
+        int i = offset;
+        while (raw != 0) {
+            buf[i++] = BASE_CHARS[(int) (raw & 0b11111)];
+            raw = raw >>> 5;
+        }
+        return i - offset;
+    }
+
+    public static long decode(CharSequence code) {
+        return decode(code, 0, code.length());
+    }
+
+    /**
+     * 查表解码，不产生中间对象
+     *
+     * @return 解码结果，包含非法字符时返回-1
+     */
+    public static long decode(CharSequence code, int offset, int len) {
         long r = 0;
-        char[] chars = code.toCharArray();
-        for (int i = chars.length - 1; i >= 0; i--) {
-            long n = baseChars.indexOf(chars[i]);
-            r = r | (n << (5*i));
+        for (int i = len - 1; i >= 0; i--) {
+            int n = indexOf(code.charAt(offset + i));
+            if (n < 0) {
+                return -1;
+            }
+            r = r | ((long) n << (5 * i));
+        }
+        return r;
+    }
+
+    public static long decode(char[] code, int offset, int len) {
+        long r = 0;
+        for (int i = len - 1; i >= 0; i--) {
+            int n = indexOf(code[offset + i]);
+            if (n < 0) {
+                return -1;
+            }
+            r = r | ((long) n << (5 * i));
         }
         return r;
     }
 
+    private static int indexOf(char c) {
+        return c < 128 ? DECODE_TABLE[c] : -1;
+    }
+
     public static String encode(byte[] raw) {
         StrBuilder sb = new StrBuilder();
         int size = 0;
@@ -1,6 +1,5 @@
 package com.tianji.promotion.utils;
 
-import com.tianji.common.constants.RegexConstants;
 import com.tianji.common.exceptions.BadRequestException;
 
 /**
@@ -44,6 +43,18 @@ public class CodeUtil {
             59169127063L, 64169927359L, 58169127291L, 61261925739L,
             59169127133L, 55139281911L, 56169127077L, 59169127167L
     };
+    /**
+     * 兑换码的最大长度，50位二进制数，每5位一个字符
+     */
+    public final static int CODE_LENGTH = 10;
+    /**
+     * 兑换码的最小长度
+     */
+    private final static int MIN_CODE_LENGTH = 8;
+    /**
+     * payload按4位分组的组数
+     */
+    private final static int PAYLOAD_GROUPS = 9;
     /**
      * fresh值的偏移位数
      */
@@ -97,41 +108,106 @@ public class CodeUtil {
      * @return 兑换码
      */
     public static String generateCode(long serialNum, long fresh) {
+        char[] buf = new char[CODE_LENGTH];
+        int len = generateCode(serialNum, fresh, buf);
+        return new String(buf, 0, len);
+    }
+
+    /**
+     * 生成兑换码，写入调用方提供的字符数组，批量生成时数组可以复用
+     *
+     * @param serialNum 递增序列号
+     * @param buf 长度至少为10的字符数组
+     * @return 兑换码长度
+     */
+    public static int generateCode(long serialNum, long fresh, char[] buf) {
         // 1.计算新鲜值
         fresh = fresh & FRESH_MASK;
         // 2.拼接payload，fresh（4位） + serialNum（32位）
         long payload = fresh << FRESH_BIT_OFFSET | serialNum;
         // 3.计算验证码
         long checkCode = calcCheckCode(payload, (int) fresh);
-        System.out.println("checkCode = " + checkCode);
         // 4.payload做大质数异或运算，混淆数据
         payload ^= XOR_TABLE[(int) (checkCode & FRESH_MASK)];
         // 5.拼接兑换码明文: 校验码（14位） + payload（36位）
         long code = checkCode << CHECK_CODE_BIT_OFFSET | payload;
         // 6.转码
-        return Base32.encode(code);
+        return Base32.encode(code, buf, 0);
+    }
+
+    /**
+     * 批量生成兑换码，第i个兑换码写入out[i * CODE_LENGTH]开始的位置，长度写入lengths[i]
+     *
+     * @param serialNums 序列号
+     * @param out 长度至少为 serialNums.length * CODE_LENGTH
+     * @param lengths 长度至少为 serialNums.length
+     */
+    public static void generateCodes(long[] serialNums, long fresh, char[] out, int[] lengths) {
+        char[] buf = new char[CODE_LENGTH];
+        for (int i = 0; i < serialNums.length; i++) {
+            int len = generateCode(serialNums[i], fresh, buf);
+            System.arraycopy(buf, 0, out, i * CODE_LENGTH, len);
+            lengths[i] = len;
+        }
     }
 
     private static long calcCheckCode(long payload, int fresh) {
         // 1.获取码表
         int[] table = PRIME_TABLE[fresh];
-        // 2.生成校验码，payload每4位乘加权数，求和，取最后13位结果
+        // 2.生成校验码，payload每4位乘加权数，求和，取最后14位结果
+        // payload只有36位，固定累加9组，高位为0的组结果为0，循环次数固定便于JIT展开
         long sum = 0;
-        int index = 0;
-        while (payload > 0) {
-            sum += (payload & 0xf) * table[index++];
-            payload >>>= 4;
+        for (int i = 0; i < PAYLOAD_GROUPS; i++) {
+            sum += (payload >>> (i << 2) & 0xf) * table[i];
         }
         return sum & CHECK_CODE_MASK;
     }
 
     public static long parseCode(String code) {
-        if (code == null || !code.matches(RegexConstants.COUPON_CODE_PATTERN)) {
+        long serialNum = code == null ? -1 : tryParseCode(code);
+        if (serialNum < 0) {
             // 兑换码格式错误
             throw new BadRequestException("无效兑换码");
         }
-        // 1.Base32解码
-        long num = Base32.decode(code);
+        return serialNum;
+    }
+
+    /**
+     * 解析兑换码，不抛出异常，也不产生中间对象
+     *
+     * @return 序列号，兑换码无效时返回-1
+     */
+    public static long tryParseCode(CharSequence code) {
+        int len = code.length();
+        if (len < MIN_CODE_LENGTH || len > CODE_LENGTH) {
+            return -1;
+        }
+        // 1.Base32解码，同时校验字符
+        return verify(Base32.decode(code, 0, len));
+    }
+
+    public static long tryParseCode(char[] code, int offset, int len) {
+        if (len < MIN_CODE_LENGTH || len > CODE_LENGTH) {
+            return -1;
+        }
+        return verify(Base32.decode(code, offset, len));
+    }
+
+    /**
+     * 批量解析兑换码，兑换码的存放方式与{@link #generateCodes}一致
+     *
+     * @param out 解析出的序列号，无效兑换码为-1
+     */
+    public static void parseCodes(char[] codes, int[] lengths, long[] out) {
+        for (int i = 0; i < lengths.length; i++) {
+            out[i] = tryParseCode(codes, i * CODE_LENGTH, lengths[i]);
+        }
+    }
+
+    private static long verify(long num) {
+        if (num < 0) {
+            return -1;
+        }
         // 2.获取低36位，payload
         long payload = num & PAYLOAD_MASK;
         // 3.获取高14位，校验码
@@ -142,7 +218,7 @@ public class CodeUtil {
         int fresh = (int) (payload >>> FRESH_BIT_OFFSET & FRESH_MASK);
         // 6.验证格式：
         if (calcCheckCode(payload, fresh) != checkCode) {
-            throw new BadRequestException("无效兑换码");
+            return -1;
         }
         return payload & SERIAL_NUM_MASK;
     }
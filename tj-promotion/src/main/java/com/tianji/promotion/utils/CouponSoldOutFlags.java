@@ -0,0 +1,76 @@
+package com.tianji.promotion.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.tianji.promotion.constants.PromotionConstants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * 本地的优惠券售罄标记。
+ * 库存领完时，领券脚本会通过Redis发布订阅通知所有实例，之后领取该券的请求直接在本地拒绝，无需访问Redis。
+ * 优惠券重新发放或库存回滚时，会通知所有实例清除标记。
+ * 标记只保留几秒，通知丢失或与其它实例的清除通知乱序时，最多误拒几秒，之后由领券脚本重新判断库存。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CouponSoldOutFlags implements MessageListener {
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * 售罄标记的有效期
+     */
+    private static final Duration SOLD_OUT_TTL = Duration.ofSeconds(3);
+
+    private final Cache<Long, Boolean> soldOut = Caffeine.newBuilder()
+            .maximumSize(10_000)
+            .expireAfterWrite(SOLD_OUT_TTL)
+            .build();
+
+    public boolean isSoldOut(Long couponId) {
+        return soldOut.getIfPresent(couponId) != null;
+    }
+
+    /**
+     * 只标记本实例，用于领券时发现库存不足的情况
+     */
+    public void markSoldOut(Long couponId) {
+        soldOut.put(couponId, Boolean.TRUE);
+    }
+
+    /**
+     * 通知所有实例，优惠券有库存了
+     */
+    public void publishAvailable(Collection<Long> couponIds) {
+        for (Long couponId : couponIds) {
+            soldOut.invalidate(couponId);
+            redisTemplate.convertAndSend(PromotionConstants.COUPON_STOCK_CHANNEL, couponId + ":1");
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        int i = body.indexOf(':');
+        if (i < 0) {
+            log.error("优惠券库存通知格式错误：{}", body);
+            return;
+        }
+        Long couponId = Long.valueOf(body.substring(0, i));
+        if ("0".equals(body.substring(i + 1))) {
+            soldOut.put(couponId, Boolean.TRUE);
+        } else {
+            soldOut.invalidate(couponId);
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.tianji.promotion.utils;
+
+import com.tianji.api.dto.promotion.CouponDiscountDTO;
+import com.tianji.api.dto.promotion.OrderCourseDTO;
+import com.tianji.promotion.domain.po.Coupon;
+import com.tianji.promotion.strategy.discount.Discount;
+import com.tianji.promotion.strategy.discount.DiscountStrategy;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * 优惠券叠加方案的搜索器，替代全排列。
+ * <p>
+ * 全排列中，一个排列的计算结果只取决于依次排入的券及各课程的剩余价格，因此按“下一张排入哪张券”做深度优先搜索，
+ * 直到没有可用的券为止，每个叶子节点就是一组排列的结果。
+ * 已排入的券、已使用的券、各课程的剩余价格和累计优惠金额都相同的状态，后续结果也完全相同，只搜索一次。
+ * 累计优惠金额必须作为状态的一部分：分摊取整时剩余价格相同的两个排列，累计优惠金额可能不同，否则会丢掉金额更大的方案。
+ * 例如使用范围不相交的券，无论先后顺序如何，得到的状态都相同，因此n张互不相交的券只需要搜索2^n个状态，而不是n!个排列。
+ * 搜索时优先尝试优惠金额大的券，并限制最大状态数，券很多时在有限时间内返回已找到的较优方案。
+ * 对每一组生效的优惠券只保留优惠金额最大的方案，搜索顺序固定，因此结果是确定的。
+ * </p>
+ */
+@Slf4j
+public class DiscountSolutionSolver {
+
+    /**
+     * 最多搜索的状态数量，超过后返回已经找到的方案，保证计算时间有上限
+     */
+    private static final int MAX_STATES = 100_000;
+    /**
+     * 状态中用一个long记录已使用的券，因此最多支持63张券
+     */
+    private static final int MAX_COUPONS = 63;
+
+    private final Coupon[] coupons;
+    private final Discount[] discounts;
+    private final int[][] couponCourses;
+    private final int[] prices;
+    private final Set<State> visited = new HashSet<>();
+    private final Map<Long, CouponDiscountDTO> bestSolutions = new HashMap<>();
+    private final int[] path;
+
+    private DiscountSolutionSolver(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses) {
+        // 1.按用户券id排序，保证搜索顺序固定
+        List<Coupon> list = new ArrayList<>(couponMap.keySet());
+        list.sort(Comparator.comparing(Coupon::getCreater));
+        if (list.size() > MAX_COUPONS) {
+            list = list.subList(0, MAX_COUPONS);
+        }
+        int n = list.size();
+        coupons = list.toArray(new Coupon[0]);
+        discounts = new Discount[n];
+        path = new int[n];
+        // 2.课程下标
+        Map<Long, Integer> courseIndex = new HashMap<>(courses.size());
+        prices = new int[courses.size()];
+        for (int i = 0; i < courses.size(); i++) {
+            courseIndex.put(courses.get(i).getId(), i);
+            prices[i] = courses.get(i).getPrice();
+        }
+        // 3.每张券可用的课程下标
+        couponCourses = new int[n][];
+        for (int i = 0; i < n; i++) {
+            discounts[i] = DiscountStrategy.getDiscount(coupons[i].getDiscountType());
+            List<OrderCourseDTO> available = couponMap.get(coupons[i]);
+            couponCourses[i] = new int[available.size()];
+            for (int j = 0; j < available.size(); j++) {
+                couponCourses[i][j] = courseIndex.get(available.get(j).getId());
+            }
+        }
+    }
+
+    /**
+     * 计算所有优惠方案，每一组生效的优惠券只返回优惠金额最大的方案，另外包含所有单券方案
+     * @param couponMap key:优惠券，value:该优惠券可用课程列表
+     * @param courses 订单中的课程列表
+     * @return 优惠方案，按用券数量、券id排序
+     */
+    public static List<CouponDiscountDTO> solve(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses) {
+        DiscountSolutionSolver solver = new DiscountSolutionSolver(couponMap, courses);
+        // 1.叠加方案
+        solver.search(0L, 0L, solver.prices, 0, 0);
+        if (solver.visited.size() >= MAX_STATES) {
+            log.warn("优惠方案搜索状态数超过上限{}，返回已找到的方案", MAX_STATES);
+        }
+        // 2.单券方案
+        for (int i = 0; i < solver.coupons.length; i++) {
+            solver.path[0] = i;
+            solver.record(1L << i, solver.singleDiscount(i), 1);
+        }
+        // 3.排序，保证结果确定
+        List<CouponDiscountDTO> list = new ArrayList<>(solver.bestSolutions.values());
+        list.sort(Comparator.<CouponDiscountDTO>comparingInt(d -> d.getIds().size())
+                .thenComparing(d -> d.getIds().stream()
+                        .sorted(Long::compare).map(String::valueOf).collect(Collectors.joining(","))));
+        return list;
+    }
+
+    private void search(long placed, long used, int[] current, int discountAmount, int depth) {
+        // 1.计算剩余每张券的可用课程总价，判断是否可用
+        int n = coupons.length;
+        int[] totals = new int[n];
+        int[] amounts = new int[n];
+        List<Integer> usable = new ArrayList<>(n);
+        List<Integer> unusable = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if ((placed & (1L << i)) != 0) {
+                continue;
+            }
+            int totalAmount = 0;
+            for (int c : couponCourses[i]) {
+                totalAmount += current[c];
+            }
+            totals[i] = totalAmount;
+            if (discounts[i].canUse(totalAmount, coupons[i])) {
+                amounts[i] = discounts[i].calculateDiscount(totalAmount, coupons[i]);
+                usable.add(i);
+            } else {
+                unusable.add(i);
+            }
+        }
+        if (usable.isEmpty()) {
+            // 2.没有可用的券了，剩余的券排在后面也不会生效，得到一个方案
+            if (depth > 0) {
+                record(used, discountAmount, depth);
+            }
+            return;
+        }
+        // 3.优先尝试优惠金额大的券，尽早找到较优的方案，搜索状态达到上限时结果也尽量好
+        usable.sort((a, b) -> amounts[a] != amounts[b] ? Integer.compare(amounts[b], amounts[a]) : Integer.compare(a, b));
+        for (int i : usable) {
+            int[] next = applyDiscount(current, couponCourses[i], totals[i], amounts[i]);
+            long nextPlaced = placed | (1L << i);
+            long nextUsed = used | (1L << i);
+            // 3.1.相同的状态只搜索一次
+            if (visited.size() >= MAX_STATES || !visited.add(new State(nextPlaced, nextUsed, next, discountAmount + amounts[i]))) {
+                continue;
+            }
+            path[depth] = i;
+            search(nextPlaced, nextUsed, next, discountAmount + amounts[i], depth + 1);
+        }
+        // 4.当前不可用的券也可以排在这个位置，从而永远不生效。
+        // 由于优惠明细分摊时的取整，其它券生效后，这张券的可用课程总价可能变高而变得可用，因此也要搜索
+        for (int i : unusable) {
+            long nextPlaced = placed | (1L << i);
+            if (visited.size() >= MAX_STATES || !visited.add(new State(nextPlaced, used, current, discountAmount))) {
+                continue;
+            }
+            search(nextPlaced, used, current, discountAmount, depth);
+        }
+    }
+
+    private void record(long used, int discountAmount, int depth) {
+        CouponDiscountDTO best = bestSolutions.get(used);
+        if (best != null && best.getDiscountAmount() >= discountAmount) {
+            return;
+        }
+        CouponDiscountDTO dto = new CouponDiscountDTO();
+        for (int k = 0; k < depth; k++) {
+            Coupon coupon = coupons[path[k]];
+            dto.getIds().add(coupon.getCreater()); // 注意这里的Creater暂时保存的是用户优惠券id，不是原始的创建者。
+            dto.getRules().add(discounts[path[k]].getRule(coupon));
+        }
+        dto.setDiscountAmount(discountAmount);
+        bestSolutions.put(used, dto);
+    }
+
+    private int singleDiscount(int i) {
+        int totalAmount = 0;
+        for (int c : couponCourses[i]) {
+            totalAmount += prices[c];
+        }
+        return discounts[i].calculateDiscount(totalAmount, coupons[i]);
+    }
+
+    /**
+     * 计算优惠明细，即把优惠金额按课程原价的比例分摊到各课程中，返回分摊后各课程的剩余价格
+     */
+    private int[] applyDiscount(int[] current, int[] courseIdx, int totalAmount, int discountAmount) {
+        int[] next = current.clone();
+        int remainDiscount = discountAmount;
+        for (int k = 0; k < courseIdx.length; k++) {
+            int c = courseIdx[k];
+            int discount;
+            if (k == courseIdx.length - 1) {
+                discount = remainDiscount;
+            } else {
+                discount = discountAmount * prices[c] / totalAmount;
+                remainDiscount = discountAmount - discount;
+            }
+            next[c] -= discount;
+        }
+        return next;
+    }
+
+    private static final class State {
+        private final long placed;
+        private final long used;
+        private final int[] prices;
+        private final int discountAmount;
+        private final int hash;
+
+        private State(long placed, long used, int[] prices, int discountAmount) {
+            this.placed = placed;
+            this.used = used;
+            this.prices = prices;
+            this.discountAmount = discountAmount;
+            this.hash = 31 * (31 * (31 * Long.hashCode(placed) + Long.hashCode(used)) + Arrays.hashCode(prices))
+                    + discountAmount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof State)) {
+                return false;
+            }
+            State s = (State) o;
+            return placed == s.placed && used == s.used && discountAmount == s.discountAmount
+                    && Arrays.equals(prices, s.prices);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+-- 领取优惠券：校验发放时间、库存、每人限领数量，并原子的扣减库存、增加领取数量
+-- KEYS[1]: 优惠券缓存 prs:coupon:{couponId}
+-- KEYS[2]: 用户领券数量 prs:user:coupon:{couponId}
+-- ARGV[1]: 用户id
+-- ARGV[2]: 当前时间毫秒值
+-- ARGV[3]: 库存通知频道
+-- ARGV[4]: 优惠券id
+-- 返回值：0-成功，其它值n对应 PromotionConstants.RECEIVE_COUPON_ERROR_MSG[n-1]
+local coupon = redis.call('hmget', KEYS[1], 'issueBeginTime', 'issueEndTime', 'totalNum', 'userLimit')
+if not coupon[1] then
+    -- 缓存不存在，说明优惠券还未开始发放
+    return 1
+end
+local now = tonumber(ARGV[2])
+if tonumber(coupon[1]) > now then
+    return 1
+end
+if tonumber(coupon[3]) <= 0 then
+    return 2
+end
+if tonumber(coupon[2]) < now then
+    return 3
+end
+local count = tonumber(redis.call('hget', KEYS[2], ARGV[1]) or '0')
+if count >= tonumber(coupon[4]) then
+    return 4
+end
+redis.call('hincrby', KEYS[2], ARGV[1], 1)
+if redis.call('hincrby', KEYS[1], 'totalNum', -1) == 0 then
+    -- 库存领完，通知所有实例
+    redis.call('publish', ARGV[3], ARGV[4] .. ':0')
+end
+return 0
@@ -0,0 +1,108 @@
+package com.tianji.promotion.benchmark;
+
+import com.tianji.common.constants.RegexConstants;
+import com.tianji.common.exceptions.BadRequestException;
+import com.tianji.promotion.utils.CodeUtil;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 批量校验兑换码的基准测试，一半有效、一半无效
+ * <ol>
+ *     <li>regexWithException：原来的方式，每次用String.matches校验格式，无效兑换码抛出异常</li>
+ *     <li>tryParseCode：查表解码，无效兑换码返回-1</li>
+ *     <li>parseCodes：批量解析定长存放的兑换码</li>
+ * </ol>
+ * 原来的方式解码和计算校验码时复用了现在的实现，因此测出的差距只会偏小，预期在10倍以上。
+ * <p>
+ * 运行方式：mvn -pl tj-promotion test-compile 后执行main方法，或在IDE中直接运行
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodeValidationBenchmark {
+
+    private static final String BASE_CHARS = "6CSB7H8DAKXZF3N95RTMVUQG2YE4JWPL";
+
+    @Param({"10000"})
+    private int size;
+
+    private String[] codes;
+    private char[] batch;
+    private int[] lengths;
+    private long[] out;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        codes = new String[size];
+        for (int i = 0; i < size; i++) {
+            if (i % 2 == 0) {
+                codes[i] = CodeUtil.generateCode(random.nextInt(Integer.MAX_VALUE), random.nextInt(16));
+                continue;
+            }
+            // 无效兑换码：随机字符，偶尔包含码表以外的字符
+            char[] chars = new char[CodeUtil.CODE_LENGTH];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = random.nextInt(20) == 0 ? '0' : BASE_CHARS.charAt(random.nextInt(BASE_CHARS.length()));
+            }
+            codes[i] = new String(chars);
+        }
+        batch = new char[size * CodeUtil.CODE_LENGTH];
+        lengths = new int[size];
+        out = new long[size];
+        for (int i = 0; i < size; i++) {
+            codes[i].getChars(0, codes[i].length(), batch, i * CodeUtil.CODE_LENGTH);
+            lengths[i] = codes[i].length();
+        }
+    }
+
+    @Benchmark
+    public int regexWithException() {
+        int valid = 0;
+        for (String code : codes) {
+            try {
+                if (!code.matches(RegexConstants.COUPON_CODE_PATTERN)) {
+                    throw new BadRequestException("无效兑换码");
+                }
+                CodeUtil.parseCode(code);
+                valid++;
+            } catch (BadRequestException e) {
+                // 无效兑换码
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int tryParseCode() {
+        int valid = 0;
+        for (String code : codes) {
+            if (CodeUtil.tryParseCode(code) >= 0) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public long[] parseCodes() {
+        CodeUtil.parseCodes(batch, lengths, out);
+        return out;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CodeValidationBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,81 @@
+package com.tianji.promotion.benchmark;
+
+import com.tianji.api.dto.promotion.CouponDiscountDTO;
+import com.tianji.api.dto.promotion.OrderCourseDTO;
+import com.tianji.promotion.domain.po.Coupon;
+import com.tianji.promotion.enums.DiscountType;
+import com.tianji.promotion.utils.DiscountSolutionSolver;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 优惠方案搜索的基准测试，券数量1~12、课程数量1~20
+ * <p>
+ * 运行方式：mvn -pl tj-promotion test-compile 后执行main方法，或在IDE中直接运行
+ * </p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiscountSolutionBenchmark {
+
+    @Param({"1", "2", "4", "6", "8", "10", "12"})
+    private int couponCount;
+
+    @Param({"1", "5", "10", "20"})
+    private int courseCount;
+
+    private List<OrderCourseDTO> courses;
+    private Map<Coupon, List<OrderCourseDTO>> couponMap;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(couponCount * 31L + courseCount);
+        // 1.课程
+        courses = new ArrayList<>(courseCount);
+        for (int i = 0; i < courseCount; i++) {
+            courses.add(new OrderCourseDTO().setId(i + 1L).setCateId(random.nextInt(3) + 1L)
+                    .setPrice((random.nextInt(500) + 100) * 100));
+        }
+        // 2.优惠券，门槛低于课程价格，保证单独使用时都可用
+        couponMap = new LinkedHashMap<>();
+        DiscountType[] types = DiscountType.values();
+        for (int i = 0; i < couponCount; i++) {
+            DiscountType type = types[i % types.length];
+            Coupon coupon = new Coupon().setId(i + 1L).setCreater(1000L + i).setDiscountType(type)
+                    .setThresholdAmount((random.nextInt(50) + 1) * 100)
+                    .setMaxDiscountAmount((random.nextInt(50) + 10) * 100)
+                    .setDiscountValue(type == DiscountType.RATE_DISCOUNT ?
+                            70 + random.nextInt(30) : (random.nextInt(9) + 1) * 100);
+            List<OrderCourseDTO> available = new ArrayList<>();
+            for (OrderCourseDTO course : courses) {
+                if (random.nextInt(3) > 0) {
+                    available.add(course);
+                }
+            }
+            if (available.isEmpty()) {
+                available.add(courses.get(random.nextInt(courseCount)));
+            }
+            couponMap.put(coupon, available);
+        }
+    }
+
+    @Benchmark
+    public List<CouponDiscountDTO> solve() {
+        return DiscountSolutionSolver.solve(couponMap, courses);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DiscountSolutionBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,121 @@
+package com.tianji.promotion.benchmark;
+
+import com.tianji.promotion.constants.PromotionConstants;
+import com.tianji.promotion.utils.CouponSoldOutFlags;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 领券的压测，基于内嵌Redis执行领券脚本，结果为每秒的领券请求数
+ * <ol>
+ *     <li>claimScript：每次请求都执行领券脚本</li>
+ *     <li>claimWithSoldOutFlag：与领券接口一致，先判断本地售罄标记</li>
+ * </ol>
+ * 库存较少时大部分请求发生在售罄之后，可以看出本地售罄标记的效果。
+ * <p>
+ * 运行方式：mvn -pl tj-promotion test-compile 后执行main方法，或在IDE中直接运行
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class ReceiveCouponBenchmark {
+
+    private static final int PORT = 16379;
+    private static final Long COUPON_ID = 1L;
+    private static final String COUPON_KEY = PromotionConstants.COUPON_CACHE_KEY_PREFIX + COUPON_ID;
+    private static final String USER_COUPON_KEY = PromotionConstants.USER_COUPON_CACHE_KEY_PREFIX + COUPON_ID;
+    private static final DefaultRedisScript<Long> RECEIVE_COUPON_SCRIPT;
+
+    static {
+        RECEIVE_COUPON_SCRIPT = new DefaultRedisScript<>();
+        RECEIVE_COUPON_SCRIPT.setLocation(new ClassPathResource("lua/receive_coupon.lua"));
+        RECEIVE_COUPON_SCRIPT.setResultType(Long.class);
+    }
+
+    @Param({"1000", "100000000"})
+    private int stock;
+
+    private RedisServer redisServer;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private CouponSoldOutFlags soldOutFlags;
+
+    @Setup(Level.Trial)
+    public void startRedis() throws IOException {
+        redisServer = new RedisServer(PORT);
+        redisServer.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("localhost", PORT));
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetStock() {
+        // 每轮重新发放，清空领取记录和本地售罄标记
+        long now = System.currentTimeMillis();
+        redisTemplate.delete(List.of(COUPON_KEY, USER_COUPON_KEY));
+        redisTemplate.opsForHash().putAll(COUPON_KEY, Map.of(
+                "issueBeginTime", String.valueOf(now - 60_000),
+                "issueEndTime", String.valueOf(now + 3_600_000),
+                "totalNum", String.valueOf(stock),
+                "userLimit", "1"));
+        soldOutFlags = new CouponSoldOutFlags(redisTemplate);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRedis() throws IOException {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    @Benchmark
+    public long claimScript() {
+        return receive();
+    }
+
+    @Benchmark
+    public long claimWithSoldOutFlag() {
+        if (soldOutFlags.isSoldOut(COUPON_ID)) {
+            return 2;
+        }
+        long r = receive();
+        if (r == 2) {
+            soldOutFlags.markSoldOut(COUPON_ID);
+        }
+        return r;
+    }
+
+    private long receive() {
+        // 每次请求使用不同的用户，避免被每人限领数量拦截
+        String userId = String.valueOf(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE));
+        Long r = redisTemplate.execute(RECEIVE_COUPON_SCRIPT, List.of(COUPON_KEY, USER_COUPON_KEY),
+                userId, String.valueOf(System.currentTimeMillis()),
+                PromotionConstants.COUPON_STOCK_CHANNEL, COUPON_ID.toString());
+        return r == null ? -1 : r;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReceiveCouponBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
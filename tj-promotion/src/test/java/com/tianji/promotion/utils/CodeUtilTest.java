@@ -0,0 +1,88 @@
+package com.tianji.promotion.utils;
+
+import com.tianji.common.exceptions.BadRequestException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeUtilTest {
+
+    @Test
+    void base32RoundTrip() {
+        long[] values = {1L, 31L, 32L, 123456789L, (1L << 50) - 1, Long.MAX_VALUE};
+        char[] buf = new char[13];
+        for (long value : values) {
+            String code = Base32.encode(value);
+            assertEquals(value, Base32.decode(code));
+            int len = Base32.encode(value, buf, 0);
+            assertEquals(code, new String(buf, 0, len));
+            assertEquals(value, Base32.decode(buf, 0, len));
+        }
+    }
+
+    @Test
+    void base32RejectIllegalChar() {
+        // 码表中没有0、1、I、O，也不接受小写和非ASCII字符
+        assertEquals(-1, Base32.decode("6CSB0"));
+        assertEquals(-1, Base32.decode("6CSBI"));
+        assertEquals(-1, Base32.decode("6csb7"));
+        assertEquals(-1, Base32.decode("6CSB兑"));
+    }
+
+    @Test
+    void codeRoundTrip() {
+        for (long fresh = 0; fresh < 16; fresh++) {
+            for (long serialNum : new long[]{0L, 1L, 2L, 1000L, 123456789L, 0xFFFFFFFFL}) {
+                String code = CodeUtil.generateCode(serialNum, fresh);
+                assertTrue(code.length() <= CodeUtil.CODE_LENGTH, code);
+                assertEquals(serialNum, CodeUtil.parseCode(code), code);
+                assertEquals(serialNum, CodeUtil.tryParseCode(code.toCharArray(), 0, code.length()), code);
+            }
+        }
+    }
+
+    @Test
+    void rejectTamperedCode() {
+        int rejected = 0;
+        for (long serialNum = 1; serialNum <= 1000; serialNum++) {
+            char[] code = CodeUtil.generateCode(serialNum, 7).toCharArray();
+            // 改掉payload中的一个字符，校验码应当对不上
+            code[3] = code[3] == '6' ? 'C' : '6';
+            if (CodeUtil.tryParseCode(new String(code)) < 0) {
+                rejected++;
+            }
+        }
+        // 14位校验码，偶尔碰撞是允许的
+        assertTrue(rejected >= 990, "rejected = " + rejected);
+    }
+
+    @Test
+    void rejectMalformedCode() {
+        assertEquals(-1, CodeUtil.tryParseCode(""));
+        assertEquals(-1, CodeUtil.tryParseCode("6CSB7H8"));
+        assertEquals(-1, CodeUtil.tryParseCode("6CSB7H8DAKX"));
+        assertEquals(-1, CodeUtil.tryParseCode("6CSB7H8D0K"));
+        assertThrows(BadRequestException.class, () -> CodeUtil.parseCode(null));
+        assertThrows(BadRequestException.class, () -> CodeUtil.parseCode("0000000000"));
+    }
+
+    @Test
+    void batchSameAsSingle() {
+        int n = 100;
+        long[] serialNums = new long[n];
+        for (int i = 0; i < n; i++) {
+            serialNums[i] = 10_000L + i * 7919L;
+        }
+        char[] codes = new char[n * CodeUtil.CODE_LENGTH];
+        int[] lengths = new int[n];
+        CodeUtil.generateCodes(serialNums, 3, codes, lengths);
+
+        long[] parsed = new long[n];
+        CodeUtil.parseCodes(codes, lengths, parsed);
+        for (int i = 0; i < n; i++) {
+            String code = new String(codes, i * CodeUtil.CODE_LENGTH, lengths[i]);
+            assertEquals(CodeUtil.generateCode(serialNums[i], 3), code);
+            assertEquals(serialNums[i], parsed[i]);
+        }
+    }
+}
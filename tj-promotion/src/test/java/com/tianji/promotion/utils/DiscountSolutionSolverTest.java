@@ -0,0 +1,161 @@
+package com.tianji.promotion.utils;
+
+import com.tianji.api.dto.promotion.CouponDiscountDTO;
+import com.tianji.api.dto.promotion.OrderCourseDTO;
+import com.tianji.promotion.domain.po.Coupon;
+import com.tianji.promotion.enums.DiscountType;
+import com.tianji.promotion.strategy.discount.Discount;
+import com.tianji.promotion.strategy.discount.DiscountStrategy;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DiscountSolutionSolverTest {
+
+    @Test
+    void sameAsPermutation() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            List<OrderCourseDTO> courses = randomCourses(random, 1 + random.nextInt(5));
+            Map<Coupon, List<OrderCourseDTO>> couponMap = randomCoupons(random, 1 + random.nextInt(6), courses);
+            if (couponMap.isEmpty()) {
+                continue;
+            }
+            Map<String, Integer> expected = permutation(couponMap, courses);
+            Map<String, Integer> actual = DiscountSolutionSolver.solve(couponMap, courses).stream()
+                    .collect(Collectors.toMap(DiscountSolutionSolverTest::key, CouponDiscountDTO::getDiscountAmount));
+            assertEquals(expected, actual, "round = " + round);
+        }
+    }
+
+    @Test
+    void containsSingleCouponSolutions() {
+        Random random = new Random(7);
+        List<OrderCourseDTO> courses = randomCourses(random, 5);
+        Map<Coupon, List<OrderCourseDTO>> couponMap = randomCoupons(random, 8, courses);
+        Set<String> keys = DiscountSolutionSolver.solve(couponMap, courses).stream()
+                .map(DiscountSolutionSolverTest::key)
+                .collect(Collectors.toSet());
+        for (Coupon coupon : couponMap.keySet()) {
+            assertTrue(keys.contains(String.valueOf(coupon.getCreater())), "coupon = " + coupon.getCreater());
+        }
+    }
+
+    @Test
+    void deterministic() {
+        Random random = new Random(2024);
+        List<OrderCourseDTO> courses = randomCourses(random, 10);
+        Map<Coupon, List<OrderCourseDTO>> couponMap = randomCoupons(random, 10, courses);
+        List<CouponDiscountDTO> first = DiscountSolutionSolver.solve(couponMap, courses);
+        // 打乱券的顺序后结果不变
+        List<Coupon> shuffled = new ArrayList<>(couponMap.keySet());
+        Collections.shuffle(shuffled, random);
+        Map<Coupon, List<OrderCourseDTO>> other = new LinkedHashMap<>();
+        shuffled.forEach(c -> other.put(c, couponMap.get(c)));
+        List<CouponDiscountDTO> second = DiscountSolutionSolver.solve(other, courses);
+        assertEquals(first, second);
+    }
+
+    /**
+     * 全排列加单券方案求解，每组生效的券取优惠金额最大的方案
+     */
+    private static Map<String, Integer> permutation(Map<Coupon, List<OrderCourseDTO>> couponMap, List<OrderCourseDTO> courses) {
+        Map<String, Integer> best = new HashMap<>();
+        permute(new ArrayList<>(couponMap.keySet()), 0, couponMap, courses, best);
+        for (Coupon coupon : couponMap.keySet()) {
+            CouponDiscountDTO dto = calculate(couponMap, courses, List.of(coupon));
+            best.merge(key(dto), dto.getDiscountAmount(), Math::max);
+        }
+        return best;
+    }
+
+    private static void permute(List<Coupon> coupons, int k, Map<Coupon, List<OrderCourseDTO>> couponMap,
+                                List<OrderCourseDTO> courses, Map<String, Integer> best) {
+        if (k == coupons.size()) {
+            CouponDiscountDTO dto = calculate(couponMap, courses, coupons);
+            if (!dto.getIds().isEmpty()) {
+                best.merge(key(dto), dto.getDiscountAmount(), Math::max);
+            }
+            return;
+        }
+        for (int i = k; i < coupons.size(); i++) {
+            Collections.swap(coupons, k, i);
+            permute(coupons, k + 1, couponMap, courses, best);
+            Collections.swap(coupons, k, i);
+        }
+    }
+
+    private static CouponDiscountDTO calculate(Map<Coupon, List<OrderCourseDTO>> couponMap,
+                                               List<OrderCourseDTO> courses, List<Coupon> solution) {
+        CouponDiscountDTO dto = new CouponDiscountDTO();
+        Map<Long, Integer> detailMap = courses.stream().collect(Collectors.toMap(OrderCourseDTO::getId, oc -> 0));
+        for (Coupon coupon : solution) {
+            List<OrderCourseDTO> availableCourses = couponMap.get(coupon);
+            int totalAmount = availableCourses.stream()
+                    .mapToInt(oc -> oc.getPrice() - detailMap.get(oc.getId())).sum();
+            Discount discount = DiscountStrategy.getDiscount(coupon.getDiscountType());
+            if (!discount.canUse(totalAmount, coupon)) {
+                continue;
+            }
+            int discountAmount = discount.calculateDiscount(totalAmount, coupon);
+            int remainDiscount = discountAmount;
+            for (int i = 0; i < availableCourses.size(); i++) {
+                OrderCourseDTO course = availableCourses.get(i);
+                int d;
+                if (i == availableCourses.size() - 1) {
+                    d = remainDiscount;
+                } else {
+                    d = discountAmount * course.getPrice() / totalAmount;
+                    remainDiscount = discountAmount - d;
+                }
+                detailMap.put(course.getId(), d + detailMap.get(course.getId()));
+            }
+            dto.getIds().add(coupon.getCreater());
+            dto.setDiscountAmount(discountAmount + dto.getDiscountAmount());
+        }
+        return dto;
+    }
+
+    private static String key(CouponDiscountDTO dto) {
+        return dto.getIds().stream().sorted(Long::compare).map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    static List<OrderCourseDTO> randomCourses(Random random, int n) {
+        List<OrderCourseDTO> courses = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            courses.add(new OrderCourseDTO().setId(i + 1L).setCateId(random.nextInt(3) + 1L)
+                    .setPrice((random.nextInt(500) + 1) * 100 + random.nextInt(100)));
+        }
+        return courses;
+    }
+
+    /**
+     * 随机生成券，只保留单独使用时可用的券，与查询可用方案时的过滤一致
+     */
+    static Map<Coupon, List<OrderCourseDTO>> randomCoupons(Random random, int n, List<OrderCourseDTO> courses) {
+        Map<Coupon, List<OrderCourseDTO>> couponMap = new LinkedHashMap<>();
+        DiscountType[] types = DiscountType.values();
+        for (int i = 0; i < n; i++) {
+            Coupon coupon = new Coupon().setId(i + 1L).setCreater(1000L + i)
+                    .setDiscountType(types[random.nextInt(types.length)])
+                    .setThresholdAmount((random.nextInt(100) + 1) * 100)
+                    .setMaxDiscountAmount((random.nextInt(50) + 1) * 100);
+            coupon.setDiscountValue(coupon.getDiscountType() == DiscountType.RATE_DISCOUNT ?
+                    50 + random.nextInt(50) : (random.nextInt(30) + 1) * 100);
+            List<OrderCourseDTO> available = courses.stream()
+                    .filter(c -> random.nextInt(3) > 0)
+                    .collect(Collectors.toList());
+            if (available.isEmpty()) {
+                continue;
+            }
+            int total = available.stream().mapToInt(OrderCourseDTO::getPrice).sum();
+            if (DiscountStrategy.getDiscount(coupon.getDiscountType()).canUse(total, coupon)) {
+                couponMap.put(coupon, available);
+            }
+        }
+        return couponMap;
+    }
+}
@@ -3,4 +3,16 @@ package com.tianji.remark.constants;
 public interface RedisConstants {
     String LIKES_BIZ_KEY_PREFIX = "likes:set:biz:";
     String LIKES_TIMES_KEY_PREFIX = "likes:times:type:";
+    /**
+     * 点赞总数缓存的分片数量，key：likes:times:type:{bizType}:{bizId % 分片数量}
+     */
+    int LIKES_TIMES_SHARDS = 16;
+    /**
+     * 有点赞总数待同步的业务类型
+     */
+    String LIKES_TIMES_TYPES_KEY = "likes:times:types";
+    /**
+     * 点赞总数的最新版本，每次读取待同步的点赞总数时由Redis生成，单调递增，key：likes:times:version:{bizType}
+     */
+    String LIKES_TIMES_VERSION_KEY_PREFIX = "likes:times:version:";
 }
@@ -21,5 +21,13 @@ public interface ILikedRecordService extends IService<LikedRecord> {
 
     Set<Long> isBizLiked(List<Long> bizIds);
 
-    void readLikedTimesAndSendMessage(String bizType, int maxBizSize);
+    /**
+     * 读取并移除缓存的点赞总数，发送一条MQ消息同步
+     *
+     * @param bizType 业务类型
+     * @param keys 要同步的点赞总数缓存
+     * @param maxBizSize 每个缓存最多同步的数量
+     * @return 同步后剩余的数量
+     */
+    long readLikedTimesAndSendMessage(String bizType, List<String> keys, int maxBizSize);
 }
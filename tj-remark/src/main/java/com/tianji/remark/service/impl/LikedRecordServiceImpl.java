@@ -68,8 +68,8 @@ public class LikedRecordServiceImpl extends ServiceImpl<LikedRecordMapper, Liked
     }
 
     @Override
-    public void readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
-
+    public long readLikedTimesAndSendMessage(String bizType, List<String> keys, int maxBizSize) {
+        return 0;
     }
 
     private boolean unlike(LikeRecordFormDTO recordDTO, Long userId) {
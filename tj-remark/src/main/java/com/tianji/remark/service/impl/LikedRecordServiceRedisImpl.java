@@ -3,7 +3,6 @@ package com.tianji.remark.service.impl;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.dto.remark.LikedTimesDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
-import com.tianji.common.utils.CollUtils;
 import com.tianji.common.utils.StringUtils;
 import com.tianji.common.utils.UserContext;
 import com.tianji.remark.constants.RedisConstants;
@@ -11,13 +10,15 @@ import com.tianji.remark.domain.dto.LikeRecordFormDTO;
 import com.tianji.remark.domain.po.LikedRecord;
 import com.tianji.remark.mapper.LikedRecordMapper;
 import com.tianji.remark.service.ILikedRecordService;
+import com.tianji.remark.task.LikedTimesFlushTask;
 import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.StringRedisConnection;
 import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -33,51 +34,36 @@ import static com.tianji.common.constants.MqConstants.Key.LIKED_TIMES_KEY_TEMPLA
 @RequiredArgsConstructor
 public class LikedRecordServiceRedisImpl  extends ServiceImpl<LikedRecordMapper, LikedRecord> implements ILikedRecordService {
 
+    private static final DefaultRedisScript<Long> LIKE_SCRIPT;
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("lua/like.lua"));
+        LIKE_SCRIPT.setResultType(Long.class);
+        DRAIN_SCRIPT = new DefaultRedisScript<>();
+        DRAIN_SCRIPT.setLocation(new ClassPathResource("lua/drain_liked_times.lua"));
+        DRAIN_SCRIPT.setResultType(List.class);
+    }
+
     private final RabbitMqHelper mqHelper;
     private final StringRedisTemplate redisTemplate;
+    private final LikedTimesFlushTask flushTask;
 
     @Override
     public void addLikeRecord(LikeRecordFormDTO recordDTO) {
-        // 1.基于前端的参数，判断是执行点赞还是取消点赞
-        boolean success = recordDTO.getLiked() ? like(recordDTO) : unlike(recordDTO);
+        // 1.基于前端的参数，执行点赞或取消点赞，状态发生变化时返回点赞总数
+        Long userId = UserContext.getUser();
+        String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId();
+        Long likedTimes = redisTemplate.execute(LIKE_SCRIPT, List.of(key),
+                userId.toString(), recordDTO.getLiked() ? "1" : "0");
         // 2.判断是否执行成功，如果失败，则直接结束
-        if (!success) {
-            return;
-        }
-        // 3.如果执行成功，统计点赞总数
-        Long likedTimes = redisTemplate.opsForSet()
-                .size(RedisConstants.LIKES_BIZ_KEY_PREFIX+recordDTO.getBizId());
-        if (likedTimes == null) {
+        if (likedTimes == null || likedTimes < 0) {
             return;
         }
-
-        // 4.缓存点赞总数到Redis
-        redisTemplate.opsForZSet().add(RedisConstants.LIKES_TIMES_KEY_PREFIX+recordDTO.getBizType(),
-                recordDTO.getBizId().toString(),
-                likedTimes);
-
-    }
-
-    private boolean unlike(LikeRecordFormDTO recordDTO) {
-        // 1.获取用户id
-        Long userId = UserContext.getUser();
-        // 2.获取Key
-        String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        // 3.执行SREM命令
-        Long result = redisTemplate.opsForSet().remove(key,userId.toString());
-
-        return result!=null && result>0;
-
-    }
-
-    private boolean like(LikeRecordFormDTO recordDTO) {
-        // 1.获取用户id
-        Long userId = UserContext.getUser();
-        // 2.获取Key
-        String key = RedisConstants.LIKES_BIZ_KEY_PREFIX + recordDTO.getBizId();
-        // 3.执行SADD命令
-        Long result = redisTemplate.opsForSet().add(key,userId.toString());
-        return result != null && result > 0;
+        // 3.记录点赞总数发生变化的业务，定时合并写入Redis
+        flushTask.add(recordDTO.getBizType(), recordDTO.getBizId());
     }
 
     @Override
@@ -106,27 +92,28 @@ public class LikedRecordServiceRedisImpl  extends ServiceImpl<LikedRecordMapper,
     }
 
     @Override
-    public void readLikedTimesAndSendMessage(String bizType, int maxBizSize) {
-        // 1.读取并移除Redis中缓存的点赞总数
-        String key = RedisConstants.LIKES_TIMES_KEY_PREFIX+bizType;
-        Set<ZSetOperations.TypedTuple<String>> tuples = redisTemplate.opsForZSet().popMin(key,maxBizSize);
-        if (CollUtils.isEmpty(tuples)) {
-            return;
+    public long readLikedTimesAndSendMessage(String bizType, List<String> keys, int maxBizSize) {
+        // 1.读取并移除Redis中缓存的点赞总数，每个缓存最多maxBizSize个，同时由Redis生成版本，一次请求完成
+        List<String> scriptKeys = new ArrayList<>(keys.size() + 1);
+        scriptKeys.add(RedisConstants.LIKES_TIMES_VERSION_KEY_PREFIX + bizType);
+        scriptKeys.addAll(keys);
+        List<?> result = redisTemplate.execute(DRAIN_SCRIPT, scriptKeys, String.valueOf(maxBizSize));
+        if (result == null || result.size() <= 2) {
+            return 0;
         }
+        long version = (Long) result.get(0);
+        long backlog = (Long) result.get(1);
         // 2.数据转换
-        List<LikedTimesDTO> list = new ArrayList<>(tuples.size());
-        for(ZSetOperations.TypedTuple<String> tuple : tuples){
-            String bizId = tuple.getValue();
-            Double likedTimes = tuple.getScore();
-            if (bizId == null || likedTimes == null) {
-                continue;
-            }
-            list.add(LikedTimesDTO.of(Long.valueOf(bizId),likedTimes.intValue()));
+        List<LikedTimesDTO> list = new ArrayList<>((result.size() - 2) / 2);
+        for (int i = 2; i + 1 < result.size(); i += 2) {
+            Long bizId = Long.valueOf((String) result.get(i));
+            int likedTimes = (int) Double.parseDouble((String) result.get(i + 1));
+            list.add(LikedTimesDTO.of(bizId, likedTimes, version));
         }
-
-        // 3.发送MQ消息
+        // 3.发送MQ消息，本次读取的所有分片合并为一条消息
         mqHelper.send(LIKE_RECORD_EXCHANGE,
                 StringUtils.format(LIKED_TIMES_KEY_TEMPLATE, bizType),
                 list);
+        return backlog;
     }
 }
@@ -1,39 +1,133 @@
 package com.tianji.remark.task;
 
+import com.tianji.common.utils.CollUtils;
+import com.tianji.remark.constants.RedisConstants;
 import com.tianji.remark.service.ILikedRecordService;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
-
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 点赞总数同步任务：
+ * <ol>
+ *     <li>业务类型从Redis中读取，点赞时登记，不再写死</li>
+ *     <li>点赞总数缓存分片，每个实例只同步自己负责的分片，按实例地址排序后取模分配</li>
+ *     <li>每次按积压数量读取，积压较多时连续同步多轮，直到清空或达到最大轮数</li>
+ * </ol>
+ */
+@Slf4j
 @Component
 @RequiredArgsConstructor
 public class LikedTimesCheckTask {
-    private static final List<String> BIZ_TYPES = List.of("QA", "NOTE");
-    private static final int MAX_BIZ_SIZE = 30;
+    /**
+     * 每个分片每轮最多同步的数量
+     */
+    private static final int MAX_BIZ_SIZE = 1000;
+    /**
+     * 每次任务最多同步的轮数
+     */
+    private static final int MAX_ROUNDS = 10;
 
     private final ILikedRecordService recordService;
-
-    @Scheduled(fixedDelay = 10000)
+    private final StringRedisTemplate redisTemplate;
+    private final DiscoveryClient discoveryClient;
+    private final ObjectProvider<Registration> registrationProvider;
+
+    private final LongAdder syncedRounds = new LongAdder();
+    /**
+     * 各业务类型同步后剩余的积压数量
+     */
+    private final Map<String, Long> backlogs = new ConcurrentHashMap<>();
+    /**
+     * 各业务类型最近一次清空积压的时间，用于计算同步延迟
+     */
+    private final Map<String, Long> clearTimes = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelay = 1000)
     public void checkLikedTimes(){
-        for(String bizType : BIZ_TYPES){
-            recordService.readLikedTimesAndSendMessage(bizType,MAX_BIZ_SIZE);
+        // 1.查询有点赞的业务类型
+        Set<String> bizTypes = redisTemplate.opsForSet().members(RedisConstants.LIKES_TIMES_TYPES_KEY);
+        if (CollUtils.isEmpty(bizTypes)) {
+            return;
+        }
+        // 2.当前实例负责的分片
+        List<Integer> shards = ownedShards();
+        long now = System.currentTimeMillis();
+        for(String bizType : bizTypes){
+            List<String> keys = new ArrayList<>(shards.size() + 1);
+            for (Integer shard : shards) {
+                keys.add(RedisConstants.LIKES_TIMES_KEY_PREFIX + bizType + ":" + shard);
+            }
+            if (shards.contains(0)) {
+                // 兼容分片之前写入的缓存
+                keys.add(RedisConstants.LIKES_TIMES_KEY_PREFIX + bizType);
+            }
+            // 3.同步，有积压则继续
+            long backlog;
+            int rounds = 0;
+            do {
+                backlog = recordService.readLikedTimesAndSendMessage(bizType, keys, MAX_BIZ_SIZE);
+                syncedRounds.increment();
+            } while (backlog > 0 && ++rounds < MAX_ROUNDS);
+            // 4.记录积压
+            backlogs.put(bizType, backlog);
+            if (backlog == 0) {
+                clearTimes.put(bizType, now);
+            } else {
+                clearTimes.putIfAbsent(bizType, now);
+            }
         }
     }
 
-}
-
-
-
-
-
-
-
-
-
-
-
-
+    private List<Integer> ownedShards() {
+        List<Integer> shards = new ArrayList<>(RedisConstants.LIKES_TIMES_SHARDS);
+        int index = 0, count = 1;
+        Registration registration = registrationProvider.getIfAvailable();
+        if (registration != null) {
+            List<String> addresses = discoveryClient.getInstances(registration.getServiceId()).stream()
+                    .map(this::addressOf)
+                    .sorted()
+                    .collect(Collectors.toList());
+            int i = addresses.indexOf(addressOf(registration));
+            // 当前实例还未出现在注册中心时，负责全部分片，重复同步不影响结果
+            if (i >= 0) {
+                index = i;
+                count = addresses.size();
+            }
+        }
+        for (int shard = 0; shard < RedisConstants.LIKES_TIMES_SHARDS; shard++) {
+            if (shard % count == index) {
+                shards.add(shard);
+            }
+        }
+        return shards;
+    }
 
+    private String addressOf(ServiceInstance instance) {
+        return instance.getHost() + ":" + instance.getPort();
+    }
 
+    @Scheduled(fixedRate = 60000)
+    public void reportMetrics() {
+        long now = System.currentTimeMillis();
+        backlogs.forEach((bizType, backlog) -> {
+            long lag = backlog == 0 ? 0 : now - clearTimes.getOrDefault(bizType, now);
+            log.info("点赞总数同步，业务类型：{}，积压数量：{}，延迟：{}ms", bizType, backlog, lag);
+        });
+        log.info("点赞总数同步轮数：{}", syncedRounds.sumThenReset());
+    }
+}
@@ -0,0 +1,90 @@
+package com.tianji.remark.task;
+
+import com.tianji.remark.constants.RedisConstants;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 点赞总数的本地合并写入：点赞时只记录发生变化的业务id，定时把一段时间内变化的业务的点赞总数一次性写入Redis，
+ * 热点业务在一个周期内无论被点赞多少次，都只写一次
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LikedTimesFlushTask {
+
+    /**
+     * 每次写入Redis的最大业务数量
+     */
+    private static final int MAX_FLUSH_SIZE = 500;
+    private static final DefaultRedisScript<Long> FLUSH_SCRIPT;
+
+    static {
+        FLUSH_SCRIPT = new DefaultRedisScript<>();
+        FLUSH_SCRIPT.setLocation(new ClassPathResource("lua/flush_liked_times.lua"));
+        FLUSH_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    /**
+     * 点赞总数发生变化的业务，key：bizType，value：bizId集合
+     */
+    private final Map<String, Set<Long>> changedBizIds = new ConcurrentHashMap<>();
+
+    public void add(String bizType, Long bizId) {
+        changedBizIds.computeIfAbsent(bizType, k -> ConcurrentHashMap.newKeySet()).add(bizId);
+    }
+
+    @Scheduled(fixedDelay = 300)
+    public void flush() {
+        for (Map.Entry<String, Set<Long>> entry : changedBizIds.entrySet()) {
+            String bizType = entry.getKey();
+            // 1.逐个取出并移除，取出后再次发生变化的业务会重新加入，在下个周期写入
+            Iterator<Long> it = entry.getValue().iterator();
+            while (it.hasNext()) {
+                List<Long> bizIds = new ArrayList<>(MAX_FLUSH_SIZE);
+                while (it.hasNext() && bizIds.size() < MAX_FLUSH_SIZE) {
+                    bizIds.add(it.next());
+                    it.remove();
+                }
+                // 2.统计点赞总数并按分片写入Redis，一批业务只需一次请求
+                List<String> keys = new ArrayList<>(bizIds.size() * 2 + 1);
+                List<String> args = new ArrayList<>(bizIds.size() + 1);
+                keys.add(RedisConstants.LIKES_TIMES_TYPES_KEY);
+                args.add(bizType);
+                String timesKeyPrefix = RedisConstants.LIKES_TIMES_KEY_PREFIX + bizType + ":";
+                for (Long bizId : bizIds) {
+                    keys.add(RedisConstants.LIKES_BIZ_KEY_PREFIX + bizId);
+                    keys.add(timesKeyPrefix + Math.floorMod(bizId, RedisConstants.LIKES_TIMES_SHARDS));
+                    args.add(bizId.toString());
+                }
+                try {
+                    redisTemplate.execute(FLUSH_SCRIPT, keys, args.toArray());
+                } catch (Exception e) {
+                    // 3.写入失败，放回去下次重试，其它业务类型继续写入
+                    log.error("写入点赞总数失败，业务类型：{}", bizType, e);
+                    bizIds.forEach(bizId -> add(bizType, bizId));
+                    break;
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        flush();
+    }
+}
@@ -0,0 +1,29 @@
+-- 读取并移除待同步的点赞总数，同时生成本次读取的版本
+-- 版本由Redis生成，取Redis的当前毫秒数与上一个版本+1中的较大值，与读取在同一个脚本中执行，
+-- 后读取的数据版本一定更大，不受各实例时钟偏差影响，也不会小于以前用实例时钟生成的版本
+-- KEYS[1]: 版本的key likes:times:version:{bizType}
+-- KEYS[2...]: 点赞总数缓存 likes:times:type:{bizType}:{shard}
+-- ARGV[1]: 每个缓存最多读取的数量
+-- 返回值：{版本, 读取后剩余的数量, 业务id, 点赞总数, 业务id, 点赞总数, ...}
+local max = tonumber(ARGV[1])
+local result = {0, 0}
+local backlog = 0
+for i = 2, #KEYS do
+    local size = redis.call('zcard', KEYS[i])
+    if size > 0 then
+        local items = redis.call('zpopmin', KEYS[i], math.min(size, max))
+        for j = 1, #items do
+            result[#result + 1] = items[j]
+        end
+        backlog = backlog + size - #items / 2
+    end
+end
+if #result > 2 then
+    local t = redis.call('time')
+    local now = tonumber(t[1]) * 1000 + math.floor(tonumber(t[2]) / 1000)
+    local version = math.max(tonumber(redis.call('get', KEYS[1]) or 0) + 1, now)
+    redis.call('set', KEYS[1], version)
+    result[1] = version
+end
+result[2] = backlog
+return result
@@ -0,0 +1,11 @@
+-- 批量统计点赞总数，写入待同步的点赞总数缓存
+-- KEYS[1]: 业务类型集合 likes:times:types
+-- KEYS[2...]: 每个业务的点赞用户集合key和所在分片的点赞总数缓存key，成对出现
+-- ARGV[1]: 业务类型
+-- ARGV[2...]: 业务id，与KEYS中的业务一一对应
+redis.call('sadd', KEYS[1], ARGV[1])
+for i = 2, #ARGV do
+    local times = redis.call('scard', KEYS[i * 2 - 2])
+    redis.call('zadd', KEYS[i * 2 - 1], times, ARGV[i])
+end
+return #ARGV - 1
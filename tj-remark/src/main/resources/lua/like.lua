@@ -0,0 +1,15 @@
+-- 点赞或取消点赞，并返回点赞总数
+-- KEYS[1]: 业务的点赞用户集合 likes:set:biz:{bizId}
+-- ARGV[1]: 用户id
+-- ARGV[2]: 1-点赞，0-取消点赞
+-- 返回值：点赞状态发生变化时返回最新的点赞总数，否则返回-1
+local changed
+if ARGV[2] == '1' then
+    changed = redis.call('sadd', KEYS[1], ARGV[1])
+else
+    changed = redis.call('srem', KEYS[1], ARGV[1])
+end
+if changed == 0 then
+    return -1
+end
+return redis.call('scard', KEYS[1])
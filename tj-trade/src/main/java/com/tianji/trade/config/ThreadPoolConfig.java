@@ -1,5 +1,6 @@
 package com.tianji.trade.config;
 
+import com.tianji.common.utils.ContextSnapshot;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -22,6 +23,8 @@ public class ThreadPoolConfig {
         refundExecutor.setThreadNamePrefix("pd-user-async-service-");
         // 由调用者线程执行
         refundExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        // 传递用户等线程上下文
+        refundExecutor.setTaskDecorator(ContextSnapshot.taskDecorator());
         refundExecutor.initialize();
         return refundExecutor;
     }
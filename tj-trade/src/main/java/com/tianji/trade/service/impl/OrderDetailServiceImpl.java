@@ -5,6 +5,7 @@ import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.cache.RoleCache;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.IdAndNumDTO;
 import com.tianji.api.dto.course.CoursePurchaseInfoDTO;
@@ -54,6 +55,8 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
 
     private final UserClient userClient;
 
+    private final UserCache userCache;
+
     private final OrderMapper orderMapper;
 
     private final PayClient payClient;
@@ -114,7 +117,7 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
         }
         // 5.查询订单中的用户信息
         Set<Long> uIds = records.stream().map(OrderDetail::getUserId).collect(Collectors.toSet());
-        List<UserDTO> users = userClient.queryUserByIds(uIds);
+        List<UserDTO> users = userCache.queryUserByIds(uIds);
         AssertUtils.isNotEmpty(users, ErrorInfo.Msg.USER_NOT_EXISTS);
         Map<Long, UserDTO> userMap = users.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
 
@@ -163,7 +166,7 @@ public class OrderDetailServiceImpl extends ServiceImpl<OrderDetailMapper, Order
         if (refundApply != null) {
             uIds.add(refundApply.getCreater());
         }
-        List<UserDTO> userDTOS = userClient.queryUserByIds(uIds);
+        List<UserDTO> userDTOS = userCache.queryUserByIds(uIds);
         AssertUtils.isNotEmpty(userDTOS, ErrorInfo.Msg.USER_NOT_EXISTS);
         Map<Long, UserDTO> userMap = userDTOS.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
 
@@ -11,6 +11,7 @@ import com.tianji.api.dto.promotion.CouponDiscountDTO;
 import com.tianji.api.dto.promotion.OrderCourseDTO;
 import com.tianji.api.dto.trade.OrderBasicDTO;
 import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
+import com.tianji.common.autoconfigure.outbox.OutboxPublisher;
 import com.tianji.common.constants.MqConstants;
 import com.tianji.common.domain.dto.PageDTO;
 import com.tianji.common.exceptions.BadRequestException;
@@ -65,6 +66,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     private final ICartService cartService;
     private final TradeProperties tradeProperties;
     private final RabbitMqHelper rabbitMqHelper;
+    private final OutboxPublisher outboxPublisher;
     private final PromotionClient promotionClient;
 
     @Override
@@ -403,8 +405,9 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         detailService.markDetailSuccessByOrderId(o.getId(), payResult.getPayChannel(), payResult.getSuccessTime());
         // 4.查询订单包含的课程信息
         List<Long> cIds = detailService.queryCourseIdsByOrderId(o.getId());
-        // 5.发送MQ消息，通知报名成功
-        rabbitMqHelper.send(
+        // 5.发送MQ消息，通知报名成功，与订单状态在同一事务中写入outbox。
+        // 未开启outbox时同步发送并等待确认，失败则回滚订单状态，由支付回调重试
+        outboxPublisher.publish(
                 MqConstants.Exchange.ORDER_EXCHANGE,
                 MqConstants.Key.ORDER_PAY_KEY,
                 OrderBasicDTO.builder()
@@ -3,6 +3,7 @@ package com.tianji.trade.service.impl;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.tianji.api.cache.RoleCache;
+import com.tianji.api.cache.UserCache;
 import com.tianji.api.client.user.UserClient;
 import com.tianji.api.dto.trade.OrderBasicDTO;
 import com.tianji.api.dto.user.UserDTO;
@@ -42,8 +43,10 @@ import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import static com.tianji.trade.constants.RefundStatus.AGREE;
@@ -61,9 +64,15 @@ import static com.tianji.trade.constants.RefundStatus.REJECT;
 @RequiredArgsConstructor
 public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, RefundApply> implements IRefundApplyService {
 
+    /**
+     * 详情页远程调用的超时时间，超时后使用兜底数据
+     */
+    private static final Duration REMOTE_CALL_TIMEOUT = Duration.ofSeconds(2);
+
     private final OrderMapper orderMapper;
     private final IOrderDetailService detailService;
     private final UserClient userClient;
+    private final UserCache userCache;
     private final PayClient payClient;
     private final RoleCache roleCache;
     private final ThreadPoolTaskExecutor sendRefundRequestExecutor;
@@ -104,7 +113,7 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
         }
 
         // 3.查询申请人信息
-        UserDTO userDTO = userClient.queryUserById(userId);
+        UserDTO userDTO = userCache.queryUserById(userId);
         AssertUtils.isNotNull(userDTO, ErrorInfo.Msg.USER_NOT_EXISTS);
         boolean isStudent = UserType.STUDENT.equalsValue(userDTO.getType());
         if (!userId.equals(detail.getUserId()) && isStudent) {
@@ -242,7 +251,7 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
             uIds.add(record.getApprover());
         }
         uIds.remove(null);
-        List<UserDTO> userDTOS = userClient.queryUserByIds(uIds);
+        List<UserDTO> userDTOS = userCache.queryUserByIds(uIds);
         if (userDTOS.size() != uIds.size()) {
             throw new BizIllegalException("用户数据有误");
         }
@@ -258,6 +267,12 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
         }
         // 2.转换VO
         RefundApplyVO vo = BeanUtils.copyBean(apply, RefundApplyVO.class);
+        // 2.1.异步查询学员和申请人信息，与后续的数据库查询并行
+        Set<Long> uIds = new HashSet<>(2);
+        uIds.add(apply.getUserId());
+        uIds.add(apply.getCreater());
+        CompletableFuture<List<UserDTO>> userFuture = AsyncUtils.supply(
+                () -> userCache.queryUserByIds(uIds), REMOTE_CALL_TIMEOUT, CollUtils.emptyList());
 
         // 3.查询订单信息及交易流水
         Order order = orderMapper.getById(apply.getOrderId());
@@ -271,11 +286,8 @@ public class RefundApplyServiceImpl extends ServiceImpl<RefundApplyMapper, Refun
         vo.setPaySuccessTime(order.getPayTime());
 
         // 4.用户信息
-        Set<Long> uIds = new HashSet<>(2);
-        uIds.add(apply.getUserId());
-        uIds.add(apply.getCreater());
-        // 4.1.远程查询
-        List<UserDTO> userDTOS = userClient.queryUserByIds(uIds);
+        // 4.1.等待远程查询结果
+        List<UserDTO> userDTOS = AsyncUtils.join(userFuture);
         AssertUtils.isNotEmpty(userDTOS, TradeErrorInfo.COURSE_EXPIRED);
         Map<Long, UserDTO> userMap = userDTOS.stream().collect(Collectors.toMap(UserDTO::getId, u -> u));
         // 4.2.学员
@@ -6,6 +6,7 @@ import com.tianji.api.client.auth.AuthClient;
 import com.tianji.api.dto.auth.RoleDTO;
 import com.tianji.api.dto.user.LoginFormDTO;
 import com.tianji.api.dto.user.UserDTO;
+import com.tianji.common.autoconfigure.mq.RabbitMqHelper;
 import com.tianji.common.domain.dto.LoginUserDTO;
 import com.tianji.common.enums.UserType;
 import com.tianji.common.exceptions.BadRequestException;
@@ -24,11 +25,18 @@ import com.tianji.user.mapper.UserMapper;
 import com.tianji.user.service.ICodeService;
 import com.tianji.user.service.IUserDetailService;
 import com.tianji.user.service.IUserService;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.List;
+
+import static com.tianji.common.constants.MqConstants.Exchange.USER_EXCHANGE;
+import static com.tianji.common.constants.MqConstants.Key.USER_UPDATED_KEY;
 import static com.tianji.user.constants.UserConstants.*;
 import static com.tianji.user.constants.UserErrorInfo.Msg.*;
 
@@ -41,6 +49,7 @@ import static com.tianji.user.constants.UserErrorInfo.Msg.*;
  * @author 虎哥
  * @since 2022-06-28
  */
+@Slf4j
 @Service
 public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IUserService {
 
@@ -52,6 +61,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
     private AuthClient authClient;
     @Autowired
     private IUserDetailService detailService;
+    @Autowired
+    private RabbitMqHelper mqHelper;
 
     @Override
     public LoginUserDTO queryUserDetail(LoginFormDTO loginDTO, boolean isStaff) {
@@ -164,6 +175,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
             user.setCellPhone(cellPhone);
             // 1.3.修改
             updateById(user);
+            // 1.4.通知各服务清理用户缓存
+            sendUserUpdated(id);
         }
     }
 
@@ -209,6 +222,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         UserDetail detail = BeanUtils.toBean(userDTO, UserDetail.class);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.通知各服务清理用户缓存
+        sendUserUpdated(userDTO.getId());
     }
 
     @Override
@@ -240,6 +255,35 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         detail.setRoleId(null);
         detail.setType(null);
         detailService.updateById(detail);
+        // 3.通知各服务清理用户缓存
+        sendUserUpdated(detail.getId());
+    }
+
+    private void sendUserUpdated(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        // 1.事务提交后再发送，避免其它服务在提交前重新查询并缓存旧数据
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doSendUserUpdated(userId);
+                }
+            });
+            return;
+        }
+        doSendUserUpdated(userId);
+    }
+
+    private void doSendUserUpdated(Long userId) {
+        // 2.异步发送，消息发送失败不影响用户信息修改，各服务的用户缓存有有效期兜底
+        mqHelper.sendAsync(USER_EXCHANGE, USER_UPDATED_KEY, List.of(userId))
+                .whenComplete((r, e) -> {
+                    if (e != null) {
+                        log.error("用户信息变更消息发送失败，用户：{}", userId, e);
+                    }
+                });
     }
 
     public User loginByPw(LoginFormDTO loginDTO) {